@@ -0,0 +1,272 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import * as d3 from "d3";
+import { Project } from './types';
+
+export type TreeNode = d3.HierarchyPointNode<Project>;
+
+export interface CanvasTreeOptions {
+  // distance between siblings and between levels, same as the layout of the svg
+  dx: number;
+  dy: number;
+  color: (node: TreeNode) => string;
+  // text right of the node, e.g. the chosen value
+  value: (node: TreeNode) => string;
+  // text shown when the pointer is over the node
+  title: (node: TreeNode) => string;
+  onOpen: (node: TreeNode) => void;
+  onExpand: (node: TreeNode) => void;
+}
+
+// Draws the tree on a single canvas instead of one svg element per node, used for hierarchies too large for the
+// DOM. Only nodes within the viewport are drawn, found through a quadtree which also resolves clicks.
+export class CanvasTree {
+  // Scale below which labels are not drawn, they would overlap anyway
+  static LABEL_SCALE = 0.6;
+  // Scale below which nodes are drawn as squares, arcs are slow and look the same at that size
+  static DOT_SCALE = 0.3;
+  static RADIUS = 6;
+
+  readonly canvas: HTMLCanvasElement;
+  private readonly context: CanvasRenderingContext2D;
+  private readonly index: d3.Quadtree<TreeNode>;
+  // bounding boxes of the links as [left, top, right, bottom], a link may cross the viewport with both ends outside
+  private readonly links: d3.HierarchyPointLink<Project>[];
+  private readonly linkBoxes: Float64Array;
+  private readonly drawLink: d3.Link<any, d3.HierarchyPointLink<Project>, TreeNode>;
+  private readonly zoom: d3.ZoomBehavior<HTMLCanvasElement, unknown>;
+  private readonly observer: ResizeObserver;
+  private transform: d3.ZoomTransform;
+  private frame = 0;
+  private width = 0;
+  private height = 0;
+  private textColor = "black";
+  private linkColor = "gray";
+  private expandColor = "blue";
+
+  constructor(
+      private readonly container: HTMLElement,
+      root: TreeNode,
+      private readonly options: CanvasTreeOptions,
+      transform?: d3.ZoomTransform) {
+    this.canvas = document.createElement("canvas");
+    this.canvas.style.display = "block";
+    this.canvas.style.width = "100%";
+    this.context = this.canvas.getContext("2d")!;
+
+    this.index = d3.quadtree<TreeNode>()
+        .x(d => d.y)
+        .y(d => d.x)
+        .addAll(root.descendants());
+    this.links = root.links();
+    this.linkBoxes = new Float64Array(this.links.length * 4);
+    this.links.forEach((link, i) => {
+      this.linkBoxes[i * 4] = link.source.y;
+      this.linkBoxes[i * 4 + 1] = Math.min(link.source.x, link.target.x);
+      this.linkBoxes[i * 4 + 2] = link.target.y;
+      this.linkBoxes[i * 4 + 3] = Math.max(link.source.x, link.target.x);
+    });
+    this.drawLink = d3.linkHorizontal<d3.HierarchyPointLink<Project>, TreeNode>()
+        .x(d => d.y)
+        .y(d => d.x)
+        .context(this.context);
+
+    // same initial view as the svg, the root on the left edge and the top of the tree at the top
+    let top = Infinity;
+    root.each(d => top = Math.min(top, d.x));
+    this.transform = transform ?? d3.zoomIdentity.translate(options.dy / 2, options.dx - top);
+
+    this.zoom = d3.zoom<HTMLCanvasElement, unknown>()
+        .scaleExtent([0.02, 4])
+        .on("zoom", (event: d3.D3ZoomEvent<HTMLCanvasElement, unknown>) => {
+          this.transform = event.transform;
+          this.scheduleDraw();
+        });
+    d3.select(this.canvas)
+        .call(this.zoom)
+        .call(this.zoom.transform, this.transform)
+        .on("dblclick.zoom", null)
+        .on("click", (event: MouseEvent) => this.click(event))
+        .on("mousemove", (event: MouseEvent) => this.hover(event));
+
+    container.appendChild(this.canvas);
+    this.observer = new ResizeObserver(() => this.resize());
+    this.observer.observe(container);
+    this.resize();
+  }
+
+  get currentTransform(): d3.ZoomTransform {
+    return this.transform;
+  }
+
+  destroy() {
+    this.observer.disconnect();
+    cancelAnimationFrame(this.frame);
+    d3.select(this.canvas).on(".zoom", null);
+    this.canvas.remove();
+  }
+
+  private resize() {
+    // the canvas fills the rest of the window, the page itself does not scroll
+    const top = this.container.getBoundingClientRect().top;
+    this.width = this.container.clientWidth;
+    this.height = Math.max(300, window.innerHeight - Math.max(0, top));
+    const ratio = window.devicePixelRatio || 1;
+    this.canvas.width = Math.round(this.width * ratio);
+    this.canvas.height = Math.round(this.height * ratio);
+    this.canvas.style.height = `${this.height}px`;
+
+    const style = getComputedStyle(this.container);
+    this.textColor = style.getPropertyValue("--primary-text-color").trim() || "black";
+    this.linkColor = style.getPropertyValue("--secondary-text-color").trim() || "gray";
+    this.expandColor = style.getPropertyValue("--link-color").trim() || "blue";
+    this.scheduleDraw();
+  }
+
+  private scheduleDraw() {
+    if (this.frame == 0) {
+      this.frame = requestAnimationFrame(() => {
+        this.frame = 0;
+        this.draw();
+      });
+    }
+  }
+
+  // Nodes within the tree coordinates of the viewport, widened by the margin
+  private visibleNodes(margin: number): TreeNode[] {
+    const [left, top] = this.transform.invert([-margin, -margin]);
+    const [right, bottom] = this.transform.invert([this.width + margin, this.height + margin]);
+    const visible: TreeNode[] = [];
+    this.index.visit((quad, x0, y0, x1, y1) => {
+      if (!quad.length) {
+        let leaf: d3.QuadtreeLeaf<TreeNode> | undefined = quad as d3.QuadtreeLeaf<TreeNode>;
+        do {
+          const d = leaf.data;
+          if (d.y >= left && d.y <= right && d.x >= top && d.x <= bottom) visible.push(d);
+        } while ((leaf = leaf.next));
+      }
+      // skip quadrants outside of the viewport
+      return x0 > right || x1 < left || y0 > bottom || y1 < top;
+    });
+    return visible;
+  }
+
+  private draw() {
+    const ctx = this.context;
+    const k = this.transform.k;
+    const ratio = this.canvas.width / Math.max(1, this.width);
+    ctx.setTransform(1, 0, 0, 1, 0, 0);
+    ctx.clearRect(0, 0, this.canvas.width, this.canvas.height);
+    ctx.setTransform(ratio * k, 0, 0, ratio * k, ratio * this.transform.x, ratio * this.transform.y);
+
+    const [left, top] = this.transform.invert([0, 0]);
+    const [right, bottom] = this.transform.invert([this.width, this.height]);
+
+    // all visible links form a single path, stroking it once is much cheaper than a stroke per link
+    ctx.beginPath();
+    const boxes = this.linkBoxes;
+    for (let i = 0; i < this.links.length; i++) {
+      const o = i * 4;
+      if (boxes[o] <= right && boxes[o + 2] >= left && boxes[o + 1] <= bottom && boxes[o + 3] >= top) {
+        this.drawLink(this.links[i]);
+      }
+    }
+    ctx.globalAlpha = 0.4;
+    ctx.strokeStyle = this.linkColor;
+    ctx.lineWidth = 3;
+    ctx.stroke();
+    ctx.globalAlpha = 1;
+
+    // labels stick out of the node, nodes slightly outside of the viewport may still show them
+    const visible = this.visibleNodes(k >= CanvasTree.LABEL_SCALE ? 200 : CanvasTree.RADIUS * k);
+
+    // one path per color
+    const byColor = new Map<string, TreeNode[]>();
+    for (const d of visible) {
+      const color = this.options.color(d);
+      const group = byColor.get(color);
+      if (group) group.push(d);
+      else byColor.set(color, [d]);
+    }
+    const r = CanvasTree.RADIUS;
+    for (const [color, group] of byColor) {
+      ctx.beginPath();
+      for (const d of group) {
+        if (k < CanvasTree.DOT_SCALE) {
+          ctx.rect(d.y - r, d.x - r, r * 2, r * 2);
+        } else {
+          ctx.moveTo(d.y + r, d.x);
+          ctx.arc(d.y, d.x, r, 0, 2 * Math.PI);
+        }
+      }
+      ctx.fillStyle = color;
+      ctx.fill();
+    }
+
+    if (k < CanvasTree.LABEL_SCALE) return;
+
+    ctx.font = "16px sans-serif";
+    ctx.textBaseline = "middle";
+    ctx.fillStyle = this.textColor;
+    ctx.textAlign = "start";
+    for (const d of visible) {
+      ctx.fillText(this.options.value(d), d.y + 10, d.x);
+    }
+    ctx.textAlign = "end";
+    for (const d of visible) {
+      ctx.fillText(d.data.name.split('/').pop() ?? d.data.name, d.y - 10, d.x);
+    }
+    ctx.textAlign = "start";
+    ctx.fillStyle = this.expandColor;
+    for (const d of visible) {
+      if (d.data.child_count) ctx.fillText(`+${d.data.child_count}`, d.y + 10, d.x + 16);
+    }
+  }
+
+  // Node under the pointer, also reports whether the pointer is on the "+n" label of a collapsed node
+  private nodeAt(event: MouseEvent): {node: TreeNode, expand: boolean} | undefined {
+    const [y, x] = this.transform.invert(d3.pointer(event, this.canvas));
+    const k = this.transform.k;
+    // tiny nodes still need a target the size of a few pixels
+    const node = this.index.find(y, x, Math.max(CanvasTree.RADIUS + 2, 4 / k));
+    if (node) return {node, expand: false};
+    if (k < CanvasTree.LABEL_SCALE) return undefined;
+
+    // the "+n" label starts right of the node one line below it
+    const label = this.index.find(y - 30, x - 16, 24);
+    if (label && label.data.child_count && y >= label.y + 8 && Math.abs(x - label.x - 16) <= 10) {
+      return {node: label, expand: true};
+    }
+    return undefined;
+  }
+
+  private click(event: MouseEvent) {
+    if (event.defaultPrevented) return; // end of a drag
+    const hit = this.nodeAt(event);
+    if (!hit) return;
+    event.preventDefault();
+    if (hit.expand) this.options.onExpand(hit.node);
+    else this.options.onOpen(hit.node);
+  }
+
+  private hover(event: MouseEvent) {
+    const hit = this.nodeAt(event);
+    this.canvas.style.cursor = hit ? "pointer" : "";
+    this.canvas.title = hit && !hit.expand ? this.options.title(hit.node) : "";
+  }
+}
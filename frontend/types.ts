@@ -2,11 +2,14 @@ interface Project {
   name: string;
   values: Object;
   children: Project[];
+  child_count?: number;
+  removed?: string[];
 }
 
 interface Value {
   value: string;
   is_inherited: boolean;
+  inheritable?: boolean;
 }
 
 export { Project, Value };
@@ -20,6 +20,7 @@ import {html, css, LitElement} from 'lit';
 import {customElement, query} from 'lit/decorators.js';
 import * as d3 from "d3";
 import { Project, Value } from './types';
+import { CanvasTree } from './canvas-tree';
 
 @customElement('zenith-page')
 export class ZenithPage extends LitElement {
@@ -28,6 +29,13 @@ export class ZenithPage extends LitElement {
   @query('#query') queryInput!: HTMLInputElement;
   data: Project | undefined;
 
+  // Levels loaded up front when no query is given
+  static INITIAL_DEPTH = 3;
+  // Trees with more nodes are drawn on a canvas, the svg gets too slow to lay out and scroll
+  static CANVAS_THRESHOLD = 2000;
+
+  canvasTree: CanvasTree | undefined;
+
   static override get styles() {
     return css`
       dialog {
@@ -226,17 +234,56 @@ export class ZenithPage extends LitElement {
   async getDataAndRender() {
     const plugin = (this as any).plugin;
 
-    let args = []
+    // only the value used for coloring is needed to draw the tree
+    let args = ["stream", "compact", `key=${encodeURIComponent(this.getHashVariable("config") ?? "parent")}`]
     if (!!this.getHashVariable("query")) {
       args.push(`query=${this.getHashVariable("query")}`);
       this.queryInput.value = this.getHashVariable("query") ?? "";
+    } else {
+      // the whole hierarchy can be huge, deeper levels are loaded when a node is expanded
+      args.push(`depth=${ZenithPage.INITIAL_DEPTH}`);
     }
 
     const query = args.length > 0 ? `?${args.join("&")}` : "";
     this.data = await plugin.restApi().send('GET', `/config/server/zenith~tree${query}`);
+    if (this.data != undefined) {
+      this.expandValues(this.data, {});
+      this.renderTree(this.data);
+    }
+  }
+
+  async getProjectWithAllValues(name: string): Promise<Project | undefined> {
+    const plugin = (this as any).plugin;
+    return await plugin.restApi().send('GET', `/config/server/zenith~tree?stream&depth=0&root=${encodeURIComponent(name)}`);
+  }
+
+  async expandNode(node: Project) {
+    const plugin = (this as any).plugin;
+    const key = encodeURIComponent(this.getHashVariable("config") ?? "parent");
+    const children: Project[] | undefined = await plugin.restApi().send('GET', `/config/server/zenith~children?compact&project=${encodeURIComponent(node.name)}&key=${key}`);
+    if (children == undefined) return;
+    children.forEach(child => this.expandValues(child, node.values));
+    node.children = children;
+    delete node.child_count;
     if (this.data != undefined) this.renderTree(this.data);
   }
 
+  // Restores the effective values of a compact response, same rule as CompactValues.expand on the server
+  expandValues(node: Project, parentValues: Object) {
+    const values: any = {...node.values};
+    const removed = new Set(node.removed ?? []);
+    for (const [key, value] of Object.entries(parentValues)) {
+      if ((value as Value).inheritable && !(key in values) && !removed.has(key)) {
+        values[key] = {...(value as Value), is_inherited: true};
+      }
+    }
+    node.values = values;
+    delete node.removed;
+    for (const child of node.children ?? []) {
+      this.expandValues(child, values);
+    }
+  }
+
   getHashVariable(variable: string): string | null {
     const params = new URLSearchParams(window.location.hash.substring(1));
     const val = params.get(variable)
@@ -268,8 +315,12 @@ export class ZenithPage extends LitElement {
      */
     const chosenConfig = this.getHashVariable("config") ?? "parent"
     const chosenProject = this.getHashVariable("open");
-    const container = this.renderRoot.querySelector('#d3-container');
+    const container = this.renderRoot.querySelector('#d3-container') as HTMLElement | null;
     if (!container) return;
+    // keep the position when the tree is redrawn after expanding a node
+    const transform = this.canvasTree?.currentTransform;
+    this.canvasTree?.destroy();
+    this.canvasTree = undefined;
     container.innerHTML = '';
 
     const color = d3.scaleOrdinal(d3.quantize(d3.interpolateRainbow, this.countUniqueValues(data)+1));
@@ -293,6 +344,19 @@ export class ZenithPage extends LitElement {
       if (!this.selectMenu.open && d.data.name == chosenProject) this.showNodeDialog(d.data)
     });
 
+    if (root.descendants().length > ZenithPage.CANVAS_THRESHOLD) {
+      this.canvasTree = new CanvasTree(container, root as d3.HierarchyPointNode<Project>, {
+        dx,
+        dy,
+        color: d => color(this.unwrap((d.data.values as any)[chosenConfig]).value),
+        value: d => this.valueLabel(d.data, chosenConfig),
+        title: d => this.valueTitle(d.data, chosenConfig),
+        onOpen: d => this.showNodeDialog(d.data),
+        onExpand: d => this.expandNode(d.data),
+      }, transform);
+      return;
+    }
+
     const height = x1 - x0 + dx * 2;
     const width = y1 - y0 + dy;
 
@@ -334,12 +398,7 @@ export class ZenithPage extends LitElement {
         .attr("r", 6);
 
     node.append("title")
-        .text((d: any) => {
-          const node = this.unwrap(d.data.values[chosenConfig]);
-          return node.is_inherited ?
-              `${d.data.name}: ${node.value} (INHERIT)` :
-              `${d.data.name}: ${node.value}`
-        });
+        .text((d: any) => this.valueTitle(d.data, chosenConfig));
 
     node.append("text")
         .attr("dy", "0.32em")
@@ -347,12 +406,7 @@ export class ZenithPage extends LitElement {
         .attr("text-anchor", "start")
         .attr("paint-order", "stroke")
         .attr("fill", "var(--primary-text-color, black)")
-        .text((d: any) => {
-          const node = this.unwrap(d.data.values[chosenConfig]);
-          return node.is_inherited ?
-              `${(node.value?.length <= 20 ? node.value : node.value.substring(0, 17) + '...')} (INHERIT)` :
-              `${(node.value?.length <= 20 ? node.value : node.value.substring(0, 17) + '...')}`
-        });
+        .text((d: any) => this.valueLabel(d.data, chosenConfig));
 
     node.append("text")
         .attr("dy", "0.32em")
@@ -362,10 +416,43 @@ export class ZenithPage extends LitElement {
         .attr("fill", "var(--primary-text-color, black)")
         .text((d: any) => d.data.name.split('/').pop());
 
+    node.filter((d: any) => !!d.data.child_count)
+        .append("text")
+        .attr("dy", "0.32em")
+        .attr("y", 16)
+        .attr("x", 10)
+        .attr("text-anchor", "start")
+        .attr("paint-order", "stroke")
+        .attr("fill", "var(--link-color, blue)")
+        .text((d: any) => `+${d.data.child_count}`)
+        .on("click", (event: MouseEvent, d: any) => {
+          event.preventDefault();
+          event.stopPropagation();
+          this.expandNode(d.data);
+        });
+
     container.appendChild(svg.node() as Node);
   }
 
-  showNodeDialog(nodeData: Project) {
+  valueTitle(project: Project, chosenConfig: string): string {
+    // @ts-ignore
+    const node = this.unwrap(project.values[chosenConfig]);
+    return node.is_inherited ?
+        `${project.name}: ${node.value} (INHERIT)` :
+        `${project.name}: ${node.value}`
+  }
+
+  valueLabel(project: Project, chosenConfig: string): string {
+    // @ts-ignore
+    const node = this.unwrap(project.values[chosenConfig]);
+    return node.is_inherited ?
+        `${(node.value?.length <= 20 ? node.value : node.value.substring(0, 17) + '...')} (INHERIT)` :
+        `${(node.value?.length <= 20 ? node.value : node.value.substring(0, 17) + '...')}`
+  }
+
+  async showNodeDialog(nodeData: Project) {
+    // the tree only holds the chosen value, the dialog lists all of them
+    nodeData = await this.getProjectWithAllValues(nodeData.name) ?? nodeData;
     this.selectMenu.innerHTML = '';
 
     const navBar = document.createElement('nav');
@@ -432,7 +519,7 @@ export class ZenithPage extends LitElement {
           keySpan.textContent = part;
           keySpan.addEventListener("click", () => {
             this.setHashVariable("config", key);
-            if (this.data != undefined) this.renderTree(this.data);
+            this.getDataAndRender();
           });
 
           const valueSpan = document.createElement('span');
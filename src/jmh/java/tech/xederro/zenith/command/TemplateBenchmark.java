@@ -0,0 +1,258 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.command;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.internal.storage.dfs.DfsPackFile;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.internal.storage.pack.PackExt;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.xederro.zenith.ZenithConfig;
+import tech.xederro.zenith.ZenithMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+// End-to-end cost of applying a template to a new branch of an empty in-memory project, run with -prof gc for the
+// bytes allocated per apply (gc.alloc.rate.norm)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TemplateBenchmark {
+  static final String TEMPLATE = "template";
+  static final String TARGET = "target";
+
+  public enum Complexity {
+    // Static text, rendering only copies it
+    PLAIN,
+    // A few variables on every line
+    VARIABLES,
+    // Loops, conditions and nested scopes
+    BLOCKS
+  }
+
+  @Param({"10", "100", "1000"})
+  private int files;
+
+  // Approximate size of every template file in bytes
+  @Param({"512", "8192"})
+  private int fileSize;
+
+  @Param
+  private Complexity complexity;
+
+  // Threads rendering the files of the template
+  @Param({"1"})
+  private int threads;
+
+  private final Map<Project.NameKey, Repository> repositories = new ConcurrentHashMap<>();
+  private TemplateExecutor executor;
+  private FileRepoHelper helper;
+  private Map<String, Object> json;
+
+  // Objects and bytes written into the target project, divided by the apply rate they give the amount per apply
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Written {
+    public long objects;
+    public long bytes;
+
+    private InMemoryRepository target;
+
+    @Setup(Level.Invocation)
+    public void newTarget(TemplateBenchmark benchmark) {
+      target = new InMemoryRepository(new DfsRepositoryDescription(TARGET));
+      benchmark.repositories.put(Project.nameKey(TARGET), target);
+    }
+
+    @TearDown(Level.Invocation)
+    public void count() throws IOException {
+      for (DfsPackFile pack : target.getObjectDatabase().getPacks()) {
+        objects += pack.getPackDescription().getObjectCount();
+        bytes += pack.getPackDescription().getFileSize(PackExt.PACK);
+      }
+    }
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    InMemoryRepository template = new InMemoryRepository(new DfsRepositoryDescription(TEMPLATE));
+    commitTemplate(template);
+    repositories.put(Project.nameKey(TEMPLATE), template);
+
+    executor = new TemplateExecutor(threads);
+    executor.start();
+    // compiled templates stay cached between applies, as they do on a server
+    helper = new FileRepoHelper(
+        null,
+        new StaticRepositoryManager(),
+        new TemplateCache(CacheBuilder.newBuilder().build(), new Handlebars()),
+        executor,
+        // defaults of a server that does not configure the plugin, stub only so no invocations are recorded
+        mock(ZenithConfig.class, withSettings().stubOnly()),
+        new ZenithMetrics(new DisabledMetricMaker()));
+
+    List<Map<String, Object>> modules = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      modules.add(Map.of("name", "module-" + i, "enabled", i % 3 != 0, "owners", List.of("alice", "bob")));
+    }
+    json = Map.of(
+        "name", "Zenith",
+        "team", Map.of("name", "Platform", "email", "platform@example.com"),
+        "modules", modules);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.stop();
+  }
+
+  // Applies per second
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public boolean apply(Written written) throws Exception {
+    return helper.createCommit(TARGET, TEMPLATE + "@master:main", json, false);
+  }
+
+  // Distribution of the time of single applies
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public boolean applyLatency(Written written) throws Exception {
+    return helper.createCommit(TARGET, TEMPLATE + "@master:main", json, false);
+  }
+
+  private void commitTemplate(Repository repo) throws Exception {
+    try (ObjectInserter inserter = repo.newObjectInserter()) {
+      DirCache dc = DirCache.newInCore();
+      DirCacheEditor editor = dc.editor();
+      for (int i = 0; i < files; i++) {
+        ObjectId blob = inserter.insert(Constants.OBJ_BLOB, content(i).getBytes(StandardCharsets.UTF_8));
+        editor.add(new DirCacheEditor.PathEdit("dir" + i % 16 + "/file" + i + ".txt") {
+          @Override
+          public void apply(DirCacheEntry entry) {
+            entry.setFileMode(FileMode.REGULAR_FILE);
+            entry.setObjectId(blob);
+          }
+        });
+      }
+      editor.finish();
+
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(dc.writeTree(inserter));
+      PersonIdent ident = new PersonIdent("Zenith", "zenith@example.com");
+      commit.setAuthor(ident);
+      commit.setCommitter(ident);
+      commit.setMessage("Template");
+      ObjectId commitId = inserter.insert(commit);
+      inserter.flush();
+
+      RefUpdate update = repo.updateRef("refs/heads/master");
+      update.setNewObjectId(commitId);
+      update.forceUpdate();
+    }
+  }
+
+  // Repeats the unit of the complexity until the file has the requested size
+  private String content(int index) {
+    String unit = switch (complexity) {
+      case PLAIN -> "Static line of file " + index + " that is copied as it is into the output.\n";
+      case VARIABLES -> "Project {{name}} of team {{team.name}} <{{team.email}}>, file " + index + ".\n";
+      case BLOCKS -> """
+          {{#each modules}}{{#if enabled}}- {{name}} of {{../name}}:{{#each owners}} {{this}}{{/each}}
+          {{else}}- {{name}} disabled
+          {{/if}}{{/each}}{{#with team}}{{name}} <{{email}}>{{/with}}, file %d
+          """.formatted(index);
+    };
+    StringBuilder content = new StringBuilder(fileSize + unit.length());
+    while (content.length() < fileSize) {
+      content.append(unit);
+    }
+    return content.toString();
+  }
+
+  // Serves the repositories of the benchmark, every caller closes the repository it opens
+  private class StaticRepositoryManager implements GitRepositoryManager {
+    @Override
+    public Status getRepositoryStatus(Project.NameKey name) {
+      return repositories.containsKey(name) ? Status.ACTIVE : Status.NON_EXISTENT;
+    }
+
+    @Override
+    public Repository openRepository(Project.NameKey name) throws RepositoryNotFoundException {
+      Repository repo = repositories.get(name);
+      if (repo == null) {
+        throw new RepositoryNotFoundException(name.get());
+      }
+      repo.incrementOpen();
+      return repo;
+    }
+
+    @Override
+    public Repository createRepository(Project.NameKey name) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<Project.NameKey> list() {
+      return new TreeSet<>(repositories.keySet());
+    }
+  }
+}
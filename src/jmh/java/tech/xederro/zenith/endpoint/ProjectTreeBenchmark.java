@@ -0,0 +1,100 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.extensions.common.ProjectInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.xederro.zenith.ZenithMetrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of building and filling the whole tree, run with -prof gc for the allocation per node (gc.alloc.rate.norm)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProjectTreeBenchmark {
+  private static final ZenithMetrics METRICS = new ZenithMetrics(new DisabledMetricMaker());
+  private static final PermissionBackend PERMISSIONS = SyntheticHierarchy.permissionBackend();
+
+  @Param
+  private SyntheticHierarchy.Shape shape;
+
+  // Whether the values of earlier requests are cached, a cold tree computes every node
+  @Param({"false", "true"})
+  private boolean cached;
+
+  private List<ProjectInfo> infos;
+  private SyntheticHierarchy hierarchy;
+  private ProjectTreeCache warmCache;
+
+  @Setup
+  public void setUp() {
+    hierarchy = new SyntheticHierarchy(shape);
+    infos = hierarchy.projectInfos();
+    warmCache = newCache();
+    if (cached) {
+      newTree(warmCache).buildTree(infos, ValueFilter.ALL);
+    }
+  }
+
+  // Nodes filled per millisecond
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @OperationsPerInvocation(SyntheticHierarchy.NODES)
+  public ProjectTree.ProjectData throughput() {
+    return build();
+  }
+
+  // Distribution of the time of whole requests
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public ProjectTree.ProjectData latency() {
+    return build();
+  }
+
+  private ProjectTree.ProjectData build() {
+    return newTree(cached ? warmCache : newCache()).buildTree(infos, ValueFilter.ALL);
+  }
+
+  private ProjectTree newTree(ProjectTreeCache cache) {
+    return new ProjectTree(
+        null, hierarchy.projectCache(), PERMISSIONS, cache, new ProjectTreeExecutor(1), null, new TreeTrace(METRICS, 0));
+  }
+
+  private static ProjectTreeCache newCache() {
+    return new ProjectTreeCache(CacheBuilder.newBuilder().build());
+  }
+}
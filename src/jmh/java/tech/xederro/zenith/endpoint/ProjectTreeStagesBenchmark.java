@@ -0,0 +1,113 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.entities.CachedProjectConfig;
+import com.google.gerrit.server.project.ProjectState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.xederro.zenith.ZenithMetrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cost of every stage for the last project of the hierarchy, layered over the values of its parent
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProjectTreeStagesBenchmark {
+  @Param
+  private SyntheticHierarchy.Shape shape;
+
+  private ProjectTree tree;
+  private ProjectState state;
+  private CachedProjectConfig config;
+  private Map<TreeKey, ProjectTree.Value> parentValues;
+
+  @Setup
+  public void setUp() {
+    SyntheticHierarchy hierarchy = new SyntheticHierarchy(shape);
+    tree = new ProjectTree(
+        null,
+        hierarchy.projectCache(),
+        SyntheticHierarchy.permissionBackend(),
+        new ProjectTreeCache(CacheBuilder.newBuilder().build()),
+        new ProjectTreeExecutor(1),
+        null,
+        new TreeTrace(new ZenithMetrics(new DisabledMetricMaker()), 0));
+
+    String name = hierarchy.projectInfos().getLast().name;
+    String parent = hierarchy.projectInfos().getLast().parent;
+    ProjectTree.ProjectData root = tree.buildTree(hierarchy.projectInfos(), ValueFilter.ALL);
+    parentValues = find(root, parent).values;
+    state = hierarchy.state(name);
+    config = state.getConfig();
+  }
+
+  @Benchmark
+  public Map<TreeKey, ProjectTree.Value> configValues() {
+    return tree.getConfigValues(state);
+  }
+
+  @Benchmark
+  public ValueMap accessSections() {
+    return tree.processAccessSections(config.getAccessSections(), parentValues);
+  }
+
+  @Benchmark
+  public ValueMap labelSections() {
+    return tree.processLabelsSections(config.getLabelSections(), parentValues);
+  }
+
+  @Benchmark
+  public ValueMap pluginConfigs() {
+    return tree.processPluginConfigs(config.getPluginConfigs(), parentValues);
+  }
+
+  @Benchmark
+  public ValueMap extensionPanelSections() {
+    return tree.processExtensionPanelSections(config.getExtensionPanelSections(), parentValues);
+  }
+
+  private static ProjectTree.ProjectData find(ProjectTree.ProjectData node, String name) {
+    if (node.name.equals(name)) {
+      return node;
+    }
+    for (ProjectTree.ProjectData child : node.children) {
+      ProjectTree.ProjectData found = find(child, name);
+      if (found != null) {
+        return found;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,299 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import static org.mockito.Mockito.*;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.AccessSection;
+import com.google.gerrit.entities.AccountsSection;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.BooleanProjectConfig;
+import com.google.gerrit.entities.CachedProjectConfig;
+import com.google.gerrit.entities.ConfiguredMimeTypes;
+import com.google.gerrit.entities.GroupReference;
+import com.google.gerrit.entities.LabelType;
+import com.google.gerrit.entities.LabelValue;
+import com.google.gerrit.entities.Permission;
+import com.google.gerrit.entities.PermissionRule;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.client.InheritableBoolean;
+import com.google.gerrit.extensions.client.SubmitType;
+import com.google.gerrit.extensions.common.ProjectInfo;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.git.TransferConfig;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.ProjectPermission;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Generated project hierarchy below All-Projects, backed by real project states so the tree walks the same code as on a server
+public final class SyntheticHierarchy {
+  // Every shape has the same number of projects, so results can be reported per node
+  static final int NODES = 1024;
+
+  public enum Shape {
+    // All projects are direct children of All-Projects
+    WIDE(NODES, 2, 2, 2, 2, 1, 1, 2),
+    // A single chain, every project inherits from all projects above it
+    DEEP(1, 2, 2, 2, 2, 1, 1, 2),
+    ACCESS_HEAVY(8, 16, 8, 4, 2, 1, 1, 2),
+    LABEL_HEAVY(8, 2, 2, 2, 32, 4, 1, 2),
+    PLUGIN_HEAVY(8, 2, 2, 2, 2, 1, 16, 16);
+
+    final int fanout;
+    final int accessSections;
+    final int permissions;
+    final int rules;
+    final int labels;
+    final int refPatterns;
+    final int plugins;
+    final int pluginKeys;
+
+    Shape(int fanout, int accessSections, int permissions, int rules,
+        int labels, int refPatterns, int plugins, int pluginKeys) {
+      this.fanout = fanout;
+      this.accessSections = accessSections;
+      this.permissions = permissions;
+      this.rules = rules;
+      this.labels = labels;
+      this.refPatterns = refPatterns;
+      this.plugins = plugins;
+      this.pluginKeys = pluginKeys;
+    }
+  }
+
+  private static final AllProjectsName ALL_PROJECTS = new AllProjectsName("All-Projects");
+  private static final AllUsersName ALL_USERS = new AllUsersName("All-Users");
+  private static final String[] PERMISSIONS = {
+      Permission.READ, Permission.PUSH, Permission.SUBMIT, Permission.CREATE,
+      Permission.forLabel("Code-Review"), Permission.ABANDON, Permission.REBASE, Permission.OWNER,
+  };
+  private static final List<LabelValue> LABEL_VALUES = List.of(
+      LabelValue.create((short) -2, "Rejected"),
+      LabelValue.create((short) -1, "Not good"),
+      LabelValue.create((short) 0, "No score"),
+      LabelValue.create((short) 1, "Looks good"),
+      LabelValue.create((short) 2, "Approved"));
+
+  private final Shape shape;
+  private final Map<Project.NameKey, ProjectState> states = new HashMap<>();
+  private final List<ProjectInfo> infos = new ArrayList<>();
+  private final ProjectCache projectCache = new StaticProjectCache();
+  private final TransferConfig transferConfig = defaultTransferConfig();
+
+  SyntheticHierarchy(Shape shape) {
+    this.shape = shape;
+
+    // breadth first, so every level is full before the next one starts
+    add(0, ALL_PROJECTS.get(), null);
+    for (int i = 1; i < NODES; i++) {
+      int parent = (i - 1) / shape.fanout;
+      add(i, "p" + i, parent == 0 ? ALL_PROJECTS.get() : "p" + parent);
+    }
+  }
+
+  ProjectCache projectCache() {
+    return projectCache;
+  }
+
+  // Every project is visible to the caller
+  static PermissionBackend permissionBackend() {
+    PermissionBackend.ForProject project = mock(PermissionBackend.ForProject.class, withSettings().stubOnly());
+    when(project.testOrFalse(ProjectPermission.ACCESS)).thenReturn(true);
+    PermissionBackend.WithUser user = mock(PermissionBackend.WithUser.class, withSettings().stubOnly());
+    when(user.project(any())).thenReturn(project);
+    PermissionBackend backend = mock(PermissionBackend.class, withSettings().stubOnly());
+    when(backend.currentUser()).thenReturn(user);
+    return backend;
+  }
+
+  // Projects as a query for the whole hierarchy returns them
+  List<ProjectInfo> projectInfos() {
+    return infos;
+  }
+
+  ProjectState state(String name) {
+    return states.get(Project.nameKey(name));
+  }
+
+  private void add(int index, String name, String parent) {
+    Project.Builder project = Project.builder(Project.nameKey(name))
+        .setSubmitType(parent == null ? SubmitType.MERGE_IF_NECESSARY : SubmitType.INHERIT);
+    for (BooleanProjectConfig config : BooleanProjectConfig.values()) {
+      // the root decides, everybody else inherits except for a few overrides
+      InheritableBoolean value = parent == null
+          ? InheritableBoolean.TRUE
+          : index % 7 == config.ordinal() % 7 ? InheritableBoolean.FALSE : InheritableBoolean.INHERIT;
+      project.setBooleanConfig(config, value);
+    }
+    if (parent != null) {
+      project.setParent(parent);
+    }
+
+    CachedProjectConfig.Builder config = CachedProjectConfig.builder()
+        .setProject(project.build())
+        .setRevision(Optional.of(ObjectId.fromString(String.format("%040x", index + 1))))
+        .setAccountsSection(AccountsSection.create(List.of()))
+        .setMimeTypes(ConfiguredMimeTypes.create(ImmutableList.of()))
+        .setMaxObjectSizeLimit(0)
+        .setCheckReceivedObjects(true);
+    addAccessSections(config, index);
+    addLabels(config, index);
+    addPlugins(config, index);
+    config.setExtensionPanelSections(Map.of("panel" + index % 4, List.of("a" + index, "b")));
+
+    ProjectState state = new ProjectState(
+        projectCache, ALL_PROJECTS, ALL_USERS, List.of(), section -> null, transferConfig, config.build());
+    states.put(state.getNameKey(), state);
+
+    ProjectInfo info = new ProjectInfo();
+    info.name = name;
+    info.parent = parent;
+    infos.add(info);
+  }
+
+  // Only read while the project states are constructed, its constructor is meant for injection
+  private static TransferConfig defaultTransferConfig() {
+    try {
+      Constructor<TransferConfig> constructor = TransferConfig.class.getDeclaredConstructor(Config.class);
+      constructor.setAccessible(true);
+      return constructor.newInstance(new Config());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // Section and group names repeat across projects, so children override part of what they inherit
+  private void addAccessSections(CachedProjectConfig.Builder config, int index) {
+    for (int s = 0; s < shape.accessSections; s++) {
+      AccessSection.Builder section = AccessSection.builder("refs/heads/s" + s + "/*");
+      for (int p = 0; p < shape.permissions; p++) {
+        String name = PERMISSIONS[p % PERMISSIONS.length] + (p < PERMISSIONS.length ? "" : "-" + p);
+        Permission.Builder permission = Permission.builder(name).setExclusiveGroup((index + s + p) % 5 == 0);
+        for (int r = 0; r < shape.rules; r++) {
+          String group = "Group " + (index + r) % 16;
+          PermissionRule.Builder rule = PermissionRule.builder(
+              GroupReference.create(AccountGroup.uuid("uuid-" + group.hashCode()), group));
+          if (Permission.hasRange(name)) {
+            rule.setRange(-r % 3, r % 3);
+          } else {
+            rule.setForce(r % 2 == 1);
+          }
+          permission.add(rule);
+        }
+        section.addPermission(permission);
+      }
+      config.addAccessSection(section.build());
+    }
+  }
+
+  private void addLabels(CachedProjectConfig.Builder config, int index) {
+    for (int l = 0; l < shape.labels; l++) {
+      List<String> refPatterns = new ArrayList<>();
+      for (int r = 0; r < shape.refPatterns; r++) {
+        refPatterns.add("refs/heads/r" + r + "/*");
+      }
+      LabelType.Builder label = LabelType.builder("Label-" + l, LABEL_VALUES)
+          .setRefPatterns(refPatterns)
+          .setDefaultValue((short) 0)
+          .setIgnoreSelfApproval((index + l) % 2 == 0);
+      if (l % 2 == 0) {
+        label.setCopyCondition("changekind:TRIVIAL_REBASE");
+      }
+      config.addLabelSection(label.build());
+    }
+  }
+
+  private void addPlugins(CachedProjectConfig.Builder config, int index) {
+    for (int p = 0; p < shape.plugins; p++) {
+      String plugin = "plugin-" + p;
+      StringBuilder text = new StringBuilder("[plugin \"").append(plugin).append("\"]\n");
+      for (int k = 0; k < shape.pluginKeys; k++) {
+        text.append("\tkey").append(k).append(" = value").append((index + k) % 8).append('\n');
+      }
+      config.addPluginConfig(plugin, text.toString());
+    }
+  }
+
+  // Only lookups are served, a mock would add its own allocations to every request
+  private class StaticProjectCache implements ProjectCache {
+    @Override
+    public ProjectState getAllProjects() {
+      return states.get(ALL_PROJECTS);
+    }
+
+    @Override
+    public ProjectState getAllUsers() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<ProjectState> get(Project.NameKey projectName) {
+      return Optional.ofNullable(states.get(projectName));
+    }
+
+    @Override
+    public void evict(Project.NameKey p) {}
+
+    @Override
+    public void evictAndReindex(Project p) {}
+
+    @Override
+    public void evictAndReindex(Project.NameKey p) {}
+
+    @Override
+    public void remove(Project p) {}
+
+    @Override
+    public void remove(Project.NameKey name) {}
+
+    @Override
+    public ImmutableSortedSet<Project.NameKey> all() {
+      return ImmutableSortedSet.copyOf(states.keySet());
+    }
+
+    @Override
+    public void refreshProjectList() {}
+
+    @Override
+    public Set<AccountGroup.UUID> guessRelevantGroupUUIDs() {
+      return Set.of();
+    }
+
+    @Override
+    public ImmutableSortedSet<Project.NameKey> byName(String prefix) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void onCreateProject(Project.NameKey newProjectName) {}
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith;
+
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Plugin settings read from the [plugin "zenith"] section of gerrit.config
+@Singleton
+public class ZenithConfig {
+  private final PluginConfig cfg;
+
+  @Inject
+  ZenithConfig(PluginConfigFactory cfgFactory, @PluginName String pluginName) {
+    this.cfg = cfgFactory.getFromGerritConfig(pluginName);
+  }
+
+  // Number of threads computing tree nodes concurrently, 1 evaluates the tree on the request thread
+  public int getTreeParallelism() {
+    return Math.max(1, cfg.getInt("treeParallelism", 1));
+  }
+
+  // Number of threads rendering files of a template concurrently, 1 renders on the command thread
+  public int getTemplateParallelism() {
+    return Math.max(1, cfg.getInt("templateParallelism", 1));
+  }
+
+  // Tree requests taking longer than this are logged with the time spent in every phase, 0 disables the log
+  public long getSlowTreeRequestThreshold() {
+    return ConfigUtil.getTimeUnit(
+        cfg.getString("slowTreeRequestThreshold", "30s"), TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS);
+  }
+
+  // Globs of template files which are copied as they are instead of being rendered
+  public List<String> getTemplateExcludes() {
+    return Arrays.asList(cfg.getStringList("templateExclude"));
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith;
+
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.Histogram0;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+// Metrics of the tree endpoint and the template commands, exported by Gerrit below plugins/zenith/
+@Singleton
+public class ZenithMetrics {
+  public enum TreePhase {
+    // Querying the projects of the tree
+    QUERY,
+    // Linking the queried projects and their ancestors into a tree
+    BUILD,
+    // Computing the values of every node
+    FILL,
+    // Dropping values inherited unchanged
+    COMPACT,
+    // Computing and writing the nodes of a streamed response
+    STREAM
+  }
+
+  public enum NodeResult {
+    COMPUTED,
+    CACHED,
+    FAILED
+  }
+
+  public enum TemplatePhase {
+    RENDER,
+    APPLY,
+    PREVIEW
+  }
+
+  public enum FileResult {
+    // Rendered with Handlebars
+    RENDERED,
+    // Binary or excluded, copied as it is
+    COPIED
+  }
+
+  private final Timer1<TreePhase> treeLatency;
+  private final Counter1<NodeResult> treeNodes;
+  private final Histogram0 treeComputedKeys;
+  private final Histogram0 treeResponseNodes;
+  private final Histogram0 treeStreamedBytes;
+  private final Timer1<TemplatePhase> templateLatency;
+  private final Counter1<FileResult> templateFiles;
+  private final Counter0 templateInsertedBytes;
+  private final Counter1<ReceiveCommand.Result> templateRefUpdates;
+
+  @Inject
+  public ZenithMetrics(MetricMaker metricMaker) {
+    treeLatency = metricMaker.newTimer(
+        "tree/latency",
+        new Description("Latency of the phases of a tree request")
+            .setCumulative()
+            .setUnit(Description.Units.MILLISECONDS),
+        Field.ofEnum(TreePhase.class, "phase", Field.ignoreMetadata())
+            .description("Phase of the request")
+            .build());
+    treeNodes = metricMaker.newCounter(
+        "tree/nodes",
+        new Description("Nodes filled by tree requests")
+            .setRate()
+            .setUnit("nodes"),
+        Field.ofEnum(NodeResult.class, "result", Field.ignoreMetadata())
+            .description("Whether the values were computed, taken from the cache or could not be computed")
+            .build());
+    treeComputedKeys = metricMaker.newHistogram(
+        "tree/computed_keys",
+        new Description("Values computed for a node missing in the cache")
+            .setCumulative()
+            .setUnit("keys"));
+    treeResponseNodes = metricMaker.newHistogram(
+        "tree/response_nodes",
+        new Description("Nodes returned by a tree request")
+            .setCumulative()
+            .setUnit("nodes"));
+    treeStreamedBytes = metricMaker.newHistogram(
+        "tree/streamed_bytes",
+        new Description("Size of a streamed tree response")
+            .setCumulative()
+            .setUnit(Description.Units.BYTES));
+    templateLatency = metricMaker.newTimer(
+        "template/latency",
+        new Description("Latency of rendering a template and applying or previewing it on a project")
+            .setCumulative()
+            .setUnit(Description.Units.MILLISECONDS),
+        Field.ofEnum(TemplatePhase.class, "phase", Field.ignoreMetadata())
+            .description("Phase of the command")
+            .build());
+    templateFiles = metricMaker.newCounter(
+        "template/files",
+        new Description("Template files prepared for applying")
+            .setRate()
+            .setUnit("files"),
+        Field.ofEnum(FileResult.class, "result", Field.ignoreMetadata())
+            .description("Whether the file was rendered or copied as it is")
+            .build());
+    templateInsertedBytes = metricMaker.newCounter(
+        "template/inserted_bytes",
+        new Description("Bytes of new objects written into projects by applied templates")
+            .setRate()
+            .setUnit(Description.Units.BYTES));
+    templateRefUpdates = metricMaker.newCounter(
+        "template/ref_updates",
+        new Description("Branch updates of applied templates")
+            .setRate()
+            .setUnit("updates"),
+        Field.ofEnum(ReceiveCommand.Result.class, "result", Field.ignoreMetadata())
+            .description("Result of the ref update")
+            .build());
+  }
+
+  public Timer1.Context<TreePhase> startTree(TreePhase phase) {
+    return treeLatency.start(phase);
+  }
+
+  public void treeNode(NodeResult result) {
+    treeNodes.increment(result);
+  }
+
+  public void treeComputedKeys(int keys) {
+    treeComputedKeys.record(keys);
+  }
+
+  public void treeResponse(int nodes) {
+    treeResponseNodes.record(nodes);
+  }
+
+  public void treeStreamed(long bytes) {
+    treeStreamedBytes.record(bytes);
+  }
+
+  public Timer1.Context<TemplatePhase> startTemplate(TemplatePhase phase) {
+    return templateLatency.start(phase);
+  }
+
+  public void templateFiles(int rendered, int copied) {
+    templateFiles.incrementBy(FileResult.RENDERED, rendered);
+    templateFiles.incrementBy(FileResult.COPIED, copied);
+  }
+
+  public void templateInserted(long bytes) {
+    templateInsertedBytes.incrementBy(bytes);
+  }
+
+  public void templateRefUpdate(ReceiveCommand.Result result) {
+    templateRefUpdates.increment(result);
+  }
+}
@@ -19,7 +19,12 @@ package tech.xederro.zenith;
 
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.webui.TopMenu;
+import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.inject.AbstractModule;
+import tech.xederro.zenith.command.TemplateCache;
+import tech.xederro.zenith.command.TemplateExecutor;
+import tech.xederro.zenith.endpoint.ProjectTreeCache;
+import tech.xederro.zenith.endpoint.ProjectTreeExecutor;
 import tech.xederro.zenith.frontend.TopMenuEntry;
 
 // Bind this plugin in your plugin's Guice Module:
@@ -28,5 +33,14 @@ class ZenithModule extends AbstractModule {
   protected void configure() {
     DynamicSet.bind(binder(), TopMenu.class).to(TopMenuEntry.class);
     install(new ZenithRestModule());
+    install(ProjectTreeCache.module());
+    install(TemplateCache.module());
+    install(new LifecycleModule() {
+      @Override
+      protected void configure() {
+        listener().to(ProjectTreeExecutor.class);
+        listener().to(TemplateExecutor.class);
+      }
+    });
   }
 }
@@ -18,6 +18,7 @@
 package tech.xederro.zenith;
 
 import com.google.gerrit.extensions.restapi.RestApiModule;
+import tech.xederro.zenith.endpoint.ProjectChildrenRest;
 import tech.xederro.zenith.endpoint.ProjectTreeRest;
 
 import static com.google.gerrit.server.config.ConfigResource.CONFIG_KIND;
@@ -26,5 +27,6 @@ public class ZenithRestModule extends RestApiModule {
   @Override
   protected void configure() {
     get(CONFIG_KIND, "tree").to(ProjectTreeRest.class);
+    get(CONFIG_KIND, "children").to(ProjectChildrenRest.class);
   }
 }
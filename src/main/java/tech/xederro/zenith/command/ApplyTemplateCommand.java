@@ -17,6 +17,7 @@
 
 package tech.xederro.zenith.command;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gerrit.sshd.CommandMetaData;
 import com.google.gerrit.sshd.SshCommand;
 import com.google.gson.Gson;
@@ -24,14 +25,31 @@ import com.google.inject.Inject;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @CommandMetaData(
     name = "apply-template-command",
     description = "SSH command for applying templates to repositories")
 public class ApplyTemplateCommand extends SshCommand {
+  // Upper bound of --threads, every thread updates the refs of another repository
+  protected static final int MAX_THREADS = 8;
+
   protected final FileRepoHelper fileRepoHelper;
   protected final Gson gson;
 
@@ -76,14 +94,75 @@ public class ApplyTemplateCommand extends SshCommand {
     this.override = override;
   }
 
+  @Option(
+      name = "--query",
+      aliases = {"-q"},
+      metaVar = "QUERY",
+      usage = "Apply the templates to every project matching the project query instead of NAME.")
+  protected String query;
+
+  @Option(
+      name = "--stdin",
+      usage = "Read projects from stdin, one per line, optionally followed by a JSON used for that project.")
+  protected boolean stdin;
+
+  @Option(
+      name = "--threads",
+      metaVar = "N",
+      usage = "Number of projects updated concurrently when applying to many projects, at most 8.")
+  protected int threads = 1;
+
+  @Option(
+      name = "--dry-run",
+      usage = "Only print the files which would be added, modified or deleted, nothing is written.")
+  protected boolean dryRun;
+
+  @Option(
+      name = "--diff",
+      usage = "Print a unified diff of every changed file, implies --dry-run.")
+  protected boolean diff;
+
+  // True when changes are only printed instead of committed
+  protected boolean isDryRun() {
+    return dryRun || diff;
+  }
+
+  // Rejects --threads outside of 1 to MAX_THREADS
+  protected boolean checkThreads() {
+    if (threads < 1 || threads > MAX_THREADS) {
+      stderr.println("error: --threads must be between 1 and " + MAX_THREADS);
+      return false;
+    }
+    return true;
+  }
+
+  // True when the templates are applied to projects from --query or --stdin
+  protected boolean isBulk() {
+    return query != null || stdin;
+  }
+
   // Main entry point for the SSH command
   @Override
   protected void run() {
+    if (isBulk()) {
+      runBulk();
+      return;
+    }
     try {
       // If target templates are specified, create corresponding commits
       if (targets != null) {
-        for (String target : targets) {
-          fileRepoHelper.createCommit(this.projectName, target, json, override);
+        if (isDryRun()) {
+          List<FileRepoHelper.PreviewChange> changes =
+              fileRepoHelper.previewCommits(this.projectName, targets, json, override, diff);
+          printChanges(changes);
+          stdout.println(changes.isEmpty()
+              ? "Project " + this.projectName + " is already up to date"
+              : "Would apply template to " + this.projectName + ": " + changes.size() + " files changed");
+          return;
+        }
+        if (!fileRepoHelper.createCommits(this.projectName, targets, json, override)) {
+          stdout.println("Project " + this.projectName + " is already up to date");
+          return;
         }
       }
       stdout.println("Applied template to " + this.projectName);
@@ -91,4 +170,164 @@ public class ApplyTemplateCommand extends SshCommand {
       stderr.println("error: " + e.getMessage());
     }
   }
+
+  private void runBulk() {
+    if (targets == null) {
+      stderr.println("error: --template-targets is required with --query or --stdin");
+      return;
+    }
+    if (!checkThreads()) {
+      return;
+    }
+
+    // Projects are grouped by the JSON they are rendered with, so each template is rendered once per distinct JSON
+    Map<String, List<String>> projectsByJson;
+    try {
+      projectsByJson = readProjects();
+    } catch (Exception e) {
+      stderr.println("error: " + e.getMessage());
+      return;
+    }
+
+    BulkProgress progress = new BulkProgress(projectsByJson.values().stream().mapToInt(List::size).sum());
+    ExecutorService pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("Zenith-Apply-%d").setDaemon(true).build());
+    try {
+      for (Map.Entry<String, List<String>> group : projectsByJson.entrySet()) {
+        applyGroup(gson.fromJson(group.getKey(), Object.class), group.getValue(), pool, progress);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      stderr.println("error: interrupted");
+    } finally {
+      pool.shutdownNow();
+    }
+    stdout.println(String.format(isDryRun()
+            ? "Previewed template on %d projects: %d would be updated, %d up to date, %d failed"
+            : "Applied template to %d projects: %d updated, %d up to date, %d failed",
+        progress.total, progress.updated.get(), progress.upToDate.get(), progress.failed.get()));
+  }
+
+  // Projects from NAME, --query and --stdin in order, each project is only applied once
+  private Map<String, List<String>> readProjects() throws Exception {
+    String defaultJson = gson.toJson(json);
+    Set<String> seen = new HashSet<>();
+    Map<String, List<String>> projectsByJson = new LinkedHashMap<>();
+
+    List<String> names = new ArrayList<>();
+    if (projectName != null) {
+      names.add(projectName);
+    }
+    if (query != null) {
+      names.addAll(fileRepoHelper.queryProjects(query));
+    }
+    for (String name : names) {
+      if (seen.add(name)) {
+        projectsByJson.computeIfAbsent(defaultJson, k -> new ArrayList<>()).add(name);
+      }
+    }
+
+    if (stdin) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.strip();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] nameJson = line.split("\\s+", 2);
+        String projectJson = nameJson.length > 1
+            ? gson.toJson(gson.fromJson(nameJson[1], Object.class))
+            : defaultJson;
+        if (seen.add(nameJson[0])) {
+          projectsByJson.computeIfAbsent(projectJson, k -> new ArrayList<>()).add(nameJson[0]);
+        }
+      }
+    }
+    return projectsByJson;
+  }
+
+  private void applyGroup(Object groupJson, List<String> projects, ExecutorService pool, BulkProgress progress)
+      throws InterruptedException {
+    List<FileRepoHelper.RenderedTemplate> rendered = new ArrayList<>();
+    try {
+      try {
+        for (String target : targets) {
+          rendered.add(fileRepoHelper.render(FileRepoHelper.TemplateTarget.parse(target), groupJson));
+        }
+      } catch (Exception e) {
+        projects.forEach(project -> progress.report(project, "failed: " + e.getMessage(), progress.failed));
+        return;
+      }
+
+      List<Future<?>> applied = new ArrayList<>();
+      for (String project : projects) {
+        applied.add(pool.submit(() -> applyProject(project, rendered, progress)));
+      }
+      for (Future<?> future : applied) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          // Failures are reported per project
+        }
+      }
+    } finally {
+      rendered.forEach(FileRepoHelper.RenderedTemplate::close);
+    }
+  }
+
+  private void applyProject(String project, List<FileRepoHelper.RenderedTemplate> rendered, BulkProgress progress) {
+    try {
+      if (isDryRun()) {
+        List<FileRepoHelper.PreviewChange> changes = fileRepoHelper.preview(project, rendered, override, diff);
+        // Changes of one project are printed together even when projects are previewed concurrently, the
+        // progress guards all output of the workers
+        synchronized (progress) {
+          if (changes.isEmpty()) {
+            progress.report(project, "up to date", progress.upToDate);
+          } else {
+            progress.report(project, changes.size() + " files would change", progress.updated);
+            printChanges(changes);
+          }
+        }
+        return;
+      }
+      if (fileRepoHelper.apply(project, rendered, override)) {
+        progress.report(project, "updated", progress.updated);
+      } else {
+        progress.report(project, "up to date", progress.upToDate);
+      }
+    } catch (Exception e) {
+      progress.report(project, "failed: " + e.getMessage(), progress.failed);
+    }
+  }
+
+  // One line per changed file, "A", "M" or "D" followed by the branch and the path, and the diff when requested
+  private void printChanges(List<FileRepoHelper.PreviewChange> changes) {
+    for (FileRepoHelper.PreviewChange change : changes) {
+      stdout.println(change.type().name().charAt(0) + " " + change.branch() + " " + change.path());
+      if (change.diff() != null) {
+        stdout.print(change.diff());
+      }
+    }
+  }
+
+  // Counts outcomes of a bulk apply and prints one status line per project. Workers print while holding its lock,
+  // the lock of the PrintWriter only covers a single line.
+  protected class BulkProgress {
+    final int total;
+    final AtomicInteger done = new AtomicInteger();
+    final AtomicInteger updated = new AtomicInteger();
+    final AtomicInteger upToDate = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+
+    BulkProgress(int total) {
+      this.total = total;
+    }
+
+    synchronized void report(String project, String status, AtomicInteger counter) {
+      counter.incrementAndGet();
+      stdout.println(String.format("[%d/%d] %s: %s", done.incrementAndGet(), total, project, status));
+    }
+  }
 }
@@ -37,6 +37,7 @@ package tech.xederro.zenith.command;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.api.GerritApi;
@@ -48,14 +49,31 @@ import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.project.ProjectState;
 import com.google.gerrit.server.project.SuggestParentCandidates;
+import com.google.gerrit.server.util.RequestScopePropagator;
 import com.google.gerrit.sshd.CommandMetaData;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
 import com.google.inject.Inject;
 import org.kohsuke.args4j.Option;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 @CommandMetaData(
     name = "create-template-command",
@@ -175,25 +193,42 @@ public class CreateTemplateCommand extends ApplyTemplateCommand {
       usage = "plugin configuration parameter with format '<plugin-name>.<parameter-name>=<value>'")
   private List<String> pluginConfigValues;
 
+  @Option(
+      name = "--manifest",
+      usage = "Create the projects listed on stdin, one JSON object per line, instead of NAME.")
+  private boolean manifest;
+
   private final GerritApi gApi;
 
   private final SuggestParentCandidates suggestParentCandidates;
 
+  private final RequestScopePropagator propagator;
+
   @Inject
   public CreateTemplateCommand(
       GerritApi gApi,
       SuggestParentCandidates suggestParentCandidates,
       FileRepoHelper fileRepoHelper,
-      Gson gson
+      Gson gson,
+      RequestScopePropagator propagator
   ) {
     super(fileRepoHelper, gson);
     this.gApi = gApi;
     this.suggestParentCandidates = suggestParentCandidates;
+    this.propagator = propagator;
   }
 
   @Override
   protected void run() {
     enableGracefulStop();
+    if (isBulk() || isDryRun()) {
+      stderr.println("--query, --stdin, --dry-run and --diff are only supported by zenith apply");
+      return;
+    }
+    if (manifest) {
+      runManifest();
+      return;
+    }
     try {
       if (!suggestParent) {
         if (projectName == null) {
@@ -201,31 +236,7 @@ public class CreateTemplateCommand extends ApplyTemplateCommand {
           return;
         }
 
-        ProjectInput input = new ProjectInput();
-        input.name = projectName;
-        if (ownerIds != null) {
-          input.owners = Lists.transform(ownerIds, uuid -> uuid != null ? uuid.get() : null);
-        }
-        if (newParent != null) {
-          input.parent = newParent.getName();
-        }
-        input.permissionsOnly = permissionsOnly;
-        input.description = projectDescription;
-        input.submitType = submitType;
-        input.useContributorAgreements = contributorAgreements;
-        input.useSignedOffBy = signedOffBy;
-        input.useContentMerge = contentMerge;
-        input.requireChangeId = requireChangeID;
-        input.createNewChangeForAllNotInTarget = createNewChangeForAllNotInTarget;
-        input.branches = branch;
-        input.createEmptyCommit = true;
-        input.maxObjectSizeLimit = maxObjectSizeLimit;
-        input.rejectEmptyCommit = rejectEmptyCommit;
-        if (pluginConfigValues != null) {
-          input.pluginConfigValues = parsePluginConfigValues(pluginConfigValues);
-        }
-
-        gApi.projects().create(input);
+        gApi.projects().create(newProjectInput(projectName));
         stdout.println("Created project " + projectName);
         super.run();
       } else {
@@ -238,6 +249,281 @@ public class CreateTemplateCommand extends ApplyTemplateCommand {
     }
   }
 
+  // Project input from the command options, manifest entries start from it
+  private ProjectInput newProjectInput(String name) throws UnloggedFailure {
+    ProjectInput input = new ProjectInput();
+    input.name = name;
+    if (ownerIds != null) {
+      input.owners = Lists.transform(ownerIds, uuid -> uuid != null ? uuid.get() : null);
+    }
+    if (newParent != null) {
+      input.parent = newParent.getName();
+    }
+    input.permissionsOnly = permissionsOnly;
+    input.description = projectDescription;
+    input.submitType = submitType;
+    input.useContributorAgreements = contributorAgreements;
+    input.useSignedOffBy = signedOffBy;
+    input.useContentMerge = contentMerge;
+    input.requireChangeId = requireChangeID;
+    input.createNewChangeForAllNotInTarget = createNewChangeForAllNotInTarget;
+    input.branches = branch;
+    input.createEmptyCommit = true;
+    input.maxObjectSizeLimit = maxObjectSizeLimit;
+    input.rejectEmptyCommit = rejectEmptyCommit;
+    if (pluginConfigValues != null) {
+      input.pluginConfigValues = parsePluginConfigValues(pluginConfigValues);
+    }
+    return input;
+  }
+
+  private void runManifest() {
+    if (!checkThreads()) {
+      return;
+    }
+    List<ManifestEntry> entries;
+    try {
+      entries = readManifest();
+    } catch (Exception e) {
+      stderr.println("error: " + e.getMessage());
+      return;
+    }
+
+    BulkProgress progress = new BulkProgress(entries.size());
+    SharedTemplates templates = new SharedTemplates(entries);
+    Map<String, String> parentErrors = lookupParents(entries);
+    ExecutorService pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("Zenith-Create-%d").setDaemon(true).build());
+    try {
+      // Projects are created level by level so parents listed in the manifest exist before their children
+      Set<String> listed = entries.stream().map(entry -> entry.name).collect(Collectors.toSet());
+      Set<String> done = new HashSet<>();
+      Set<String> failed = new HashSet<>();
+      List<ManifestEntry> pending = entries;
+      while (!pending.isEmpty()) {
+        List<ManifestEntry> next = new ArrayList<>();
+        Map<ManifestEntry, Future<Boolean>> level = new LinkedHashMap<>();
+        for (ManifestEntry entry : pending) {
+          if (entry.parent != null && listed.contains(entry.parent) && !done.contains(entry.parent)) {
+            next.add(entry);
+          } else if (failed.contains(entry.parent) || parentErrors.containsKey(entry.parent)) {
+            String error = failed.contains(entry.parent)
+                ? "parent " + entry.parent + " was not created"
+                : parentErrors.get(entry.parent);
+            templates.release(entry);
+            progress.report(entry.name, "failed: " + error, progress.failed);
+            failed.add(entry.name);
+            done.add(entry.name);
+          } else {
+            level.put(entry, pool.submit(propagator.wrap(() -> createProject(entry, templates, progress))));
+          }
+        }
+        if (level.isEmpty() && !next.isEmpty()) {
+          // Only projects whose parents form a cycle, or which inherit from such a project, are left
+          for (ManifestEntry entry : next) {
+            templates.release(entry);
+            progress.report(entry.name, "failed: parent " + entry.parent + " can never be created", progress.failed);
+          }
+          break;
+        }
+        for (Map.Entry<ManifestEntry, Future<Boolean>> created : level.entrySet()) {
+          if (!getCreated(created.getValue())) {
+            failed.add(created.getKey().name);
+          }
+          done.add(created.getKey().name);
+        }
+        pending = next;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      stderr.println("error: interrupted");
+    } finally {
+      pool.shutdownNow();
+      templates.close();
+    }
+    stdout.println(String.format("Created %d of %d projects, %d failed",
+        progress.updated.get(), progress.total, progress.failed.get()));
+  }
+
+  private static boolean getCreated(Future<Boolean> created) throws InterruptedException {
+    try {
+      return created.get();
+    } catch (ExecutionException e) {
+      return false;
+    }
+  }
+
+  // Manifest entries from stdin, one JSON object per line, empty lines and lines starting with # are skipped
+  private List<ManifestEntry> readManifest() throws IOException {
+    List<ManifestEntry> entries = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+    String line;
+    for (int lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+      line = line.strip();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      ManifestEntry entry;
+      try {
+        entry = gson.fromJson(line, ManifestEntry.class);
+      } catch (JsonParseException e) {
+        throw new IOException("line " + lineNumber + ": " + e.getMessage(), e);
+      }
+      if (entry.name == null || entry.name.isEmpty()) {
+        throw new IOException("line " + lineNumber + ": name is required");
+      }
+      if (!names.add(entry.name)) {
+        throw new IOException("line " + lineNumber + ": project " + entry.name + " is listed twice");
+      }
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  // Each parent outside of the manifest is looked up once, returns the error for parents which do not exist
+  private Map<String, String> lookupParents(List<ManifestEntry> entries) {
+    Set<String> listed = entries.stream().map(entry -> entry.name).collect(Collectors.toSet());
+    Map<String, String> errors = new HashMap<>();
+    Set<String> checked = new HashSet<>();
+    for (ManifestEntry entry : entries) {
+      if (entry.parent != null && !listed.contains(entry.parent) && checked.add(entry.parent)) {
+        try {
+          gApi.projects().name(entry.parent).get();
+        } catch (RestApiException e) {
+          errors.put(entry.parent, "parent " + entry.parent + " not found");
+        }
+      }
+    }
+    return errors;
+  }
+
+  private boolean createProject(ManifestEntry entry, SharedTemplates templates, BulkProgress progress) {
+    try {
+      ProjectInput input = newProjectInput(entry.name);
+      if (entry.parent != null) {
+        input.parent = entry.parent;
+      }
+      if (entry.owners != null) {
+        input.owners = entry.owners;
+      }
+      if (entry.description != null) {
+        input.description = entry.description;
+      }
+      gApi.projects().create(input);
+
+      List<FileRepoHelper.RenderedTemplate> rendered = new ArrayList<>();
+      for (String target : targetsOf(entry)) {
+        rendered.add(templates.get(target, jsonOf(entry)));
+      }
+      if (!rendered.isEmpty()) {
+        fileRepoHelper.apply(entry.name, rendered, override);
+      }
+      progress.report(entry.name, "created", progress.updated);
+      return true;
+    } catch (Exception e) {
+      progress.report(entry.name, "failed: " + e.getMessage(), progress.failed);
+      return false;
+    } finally {
+      templates.release(entry);
+    }
+  }
+
+  private List<String> targetsOf(ManifestEntry entry) {
+    if (entry.templateTargets != null) {
+      return entry.templateTargets;
+    }
+    return targets != null ? targets : List.of();
+  }
+
+  private Object jsonOf(ManifestEntry entry) {
+    return entry.json != null ? entry.json : json;
+  }
+
+  // One line of a manifest, fields which are not set fall back to the command options
+  static class ManifestEntry {
+    String name;
+    String parent;
+    List<String> owners;
+    String description;
+    @SerializedName("template_targets")
+    List<String> templateTargets;
+    Object json;
+  }
+
+  // Renders each distinct template target and JSON of the manifest once, shared by all projects using them.
+  // The rendered output is dropped as soon as the last project using it is done.
+  private class SharedTemplates {
+    private final Map<String, SharedTemplate> shared = new HashMap<>();
+
+    SharedTemplates(List<ManifestEntry> entries) {
+      for (ManifestEntry entry : entries) {
+        for (String target : targetsOf(entry)) {
+          shared.computeIfAbsent(key(target, jsonOf(entry)), k -> new SharedTemplate(target, jsonOf(entry))).uses++;
+        }
+      }
+    }
+
+    FileRepoHelper.RenderedTemplate get(String target, Object json) throws IOException {
+      return shared.get(key(target, json)).get();
+    }
+
+    void release(ManifestEntry entry) {
+      for (String target : targetsOf(entry)) {
+        shared.get(key(target, jsonOf(entry))).release();
+      }
+    }
+
+    void close() {
+      shared.values().forEach(SharedTemplate::close);
+    }
+
+    private String key(String target, Object json) {
+      return target + '\n' + gson.toJson(json);
+    }
+  }
+
+  private class SharedTemplate {
+    private final String target;
+    private final Object json;
+    private int uses;
+    private FileRepoHelper.RenderedTemplate rendered;
+    private IOException failure;
+
+    SharedTemplate(String target, Object json) {
+      this.target = target;
+      this.json = json;
+    }
+
+    synchronized FileRepoHelper.RenderedTemplate get() throws IOException {
+      if (failure != null) {
+        throw failure;
+      }
+      if (rendered == null) {
+        try {
+          rendered = fileRepoHelper.render(FileRepoHelper.TemplateTarget.parse(target), json);
+        } catch (IOException e) {
+          failure = e;
+          throw e;
+        }
+      }
+      return rendered;
+    }
+
+    synchronized void release() {
+      if (--uses == 0) {
+        close();
+      }
+    }
+
+    synchronized void close() {
+      if (rendered != null) {
+        rendered.close();
+        rendered = null;
+      }
+    }
+  }
+
   @VisibleForTesting
   Map<String, Map<String, ConfigValue>> parsePluginConfigValues(List<String> pluginConfigValues)
       throws UnloggedFailure {
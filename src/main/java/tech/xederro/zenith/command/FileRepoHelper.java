@@ -17,39 +17,95 @@
 
 package tech.xederro.zenith.command;
 
-import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Template;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.api.GerritApi;
 import com.google.gerrit.extensions.api.projects.ProjectInput;
+import com.google.gerrit.extensions.common.ProjectInfo;
 import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.inject.Inject;
 import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
 import org.eclipse.jgit.dircache.DirCacheEditor;
 import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.ignore.IgnoreNode;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.TemporaryBuffer;
+import tech.xederro.zenith.ZenithConfig;
+import tech.xederro.zenith.ZenithMetrics;
+import tech.xederro.zenith.ZenithMetrics.TemplatePhase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 // Helper class to manage repositories and handle template commits
 public class FileRepoHelper {
   private final GerritApi gerritApi;
   private final GitRepositoryManager repoManager;
-  private final Handlebars engine;
+  private final TemplateCache templateCache;
+  private final TemplateExecutor templateExecutor;
+  private final ZenithConfig config;
+  private final ZenithMetrics metrics;
+
+  // Template file listing files which are copied as they are, using .gitignore syntax
+  static final String IGNORE_FILE = ".zenithignore";
+
+  // Number of files rendered by one task when rendering in parallel
+  private static final int RENDER_CHUNK = 32;
+
+  // Rendered output larger than this is kept in a temporary file instead of the heap
+  private static final int RENDER_IN_CORE_LIMIT = 1 << 20;
+
+  // Files larger than this are not diffed by preview, they are reported like binary files
+  private static final int DIFF_LIMIT = 4 << 20;
+  private static final byte[] TOO_LARGE_TO_DIFF = {0};
 
   @Inject
-  public FileRepoHelper(GerritApi gerritApi, GitRepositoryManager repoManager, Handlebars engine) {
+  public FileRepoHelper(GerritApi gerritApi, GitRepositoryManager repoManager, TemplateCache templateCache,
+      TemplateExecutor templateExecutor, ZenithConfig config, ZenithMetrics metrics) {
     this.gerritApi = gerritApi;
     this.repoManager = repoManager;
-    this.engine = engine;
+    this.templateCache = templateCache;
+    this.templateExecutor = templateExecutor;
+    this.config = config;
+    this.metrics = metrics;
   }
 
   // Create a new Gerrit project using the input specification
@@ -57,149 +113,566 @@ public class FileRepoHelper {
     gerritApi.projects().create(input);
   }
 
-  // Create a commit on a given branch, applying a Handlebars template
-  public void createCommit(String projectTo, String target, Object json, boolean override) throws Exception {
-    // Parse the target argument into repo, ref, and destination branch
-    String[] fromRefTo = target.split("[:@]");
-    String from = fromRefTo[0];
-    String ref = fromRefTo[1];
-    String to = fromRefTo[2];
+  // Query all projects matching a Gerrit project query, page by page
+  public List<String> queryProjects(String query) throws RestApiException {
+    List<String> names = new ArrayList<>();
+    while (true) {
+      List<ProjectInfo> page = gerritApi.projects().query().withQuery(query).withStart(names.size()).get();
+      if (page.isEmpty()) {
+        return names;
+      }
+      page.forEach(info -> names.add(info.name));
+    }
+  }
+
+  // Create a commit on a given branch, applying a Handlebars template.
+  // Returns false when the branch already holds the resulting tree and was left untouched.
+  public boolean createCommit(String projectTo, String target, Object json, boolean override) throws Exception {
+    return createCommits(projectTo, List.of(target), json, override);
+  }
 
-    if (!to.equals("refs/meta/config")) {
-      to = Constants.R_HEADS + to;
+  // Apply all templates to a project in one ref transaction, false when every branch was already up to date
+  public boolean createCommits(String projectTo, List<String> targets, Object json, boolean override) throws Exception {
+    List<RenderedTemplate> rendered = new ArrayList<>(targets.size());
+    try {
+      for (String target : targets) {
+        rendered.add(render(TemplateTarget.parse(target), json));
+      }
+      return apply(projectTo, rendered, override);
+    } finally {
+      rendered.forEach(RenderedTemplate::close);
     }
-    if (!ref.equals("refs/meta/config")) {
-      ref = Constants.R_HEADS + ref;
+  }
+
+  // Preview all templates applied to a project without writing to it
+  public List<PreviewChange> previewCommits(String projectTo, List<String> targets, Object json, boolean override,
+      boolean diff) throws Exception {
+    List<RenderedTemplate> rendered = new ArrayList<>(targets.size());
+    try {
+      for (String target : targets) {
+        rendered.add(render(TemplateTarget.parse(target), json));
+      }
+      return preview(projectTo, rendered, override, diff);
+    } finally {
+      rendered.forEach(RenderedTemplate::close);
+    }
+  }
+
+  // Render every file of the template once, the result can be applied to any number of projects
+  @SuppressWarnings("try")
+  public RenderedTemplate render(TemplateTarget target, Object json) throws IOException {
+    Repository repo = repoManager.openRepository(Project.nameKey(target.from()));
+    try (ObjectReader reader = repo.newObjectReader();
+        Timer1.Context<TemplatePhase> ignored = metrics.startTemplate(TemplatePhase.RENDER)) {
+      List<TemplateFile> files = listFiles(repo, target.ref(), reader);
+
+      List<TemporaryBuffer> contents;
+      Optional<ExecutorService> executor = templateExecutor.executor();
+      if (executor.isEmpty() || files.size() <= RENDER_CHUNK) {
+        contents = renderAll(files, reader, json);
+      } else {
+        contents = renderParallel(repo, files, json, executor.get());
+      }
+      int rendered = (int) contents.stream().filter(Objects::nonNull).count();
+      metrics.templateFiles(rendered, contents.size() - rendered);
+      return new RenderedTemplate(target, repo, files, contents);
+    } catch (IOException | RuntimeException e) {
+      repo.close();
+      throw e;
     }
+  }
+
+  // Commit rendered templates on their target branches of a project, templates writing to the same branch are
+  // combined into one commit. All branches are updated in a single batch, atomic when the ref database supports it.
+  // Returns false when every branch was already up to date.
+  @SuppressWarnings("try")
+  public boolean apply(String projectTo, List<RenderedTemplate> templates, boolean override) throws IOException {
+    try (Repository repo = repoManager.openRepository(Project.nameKey(projectTo));
+        MissingObjectInserter inserter = new MissingObjectInserter(repo.newObjectInserter());
+        ObjectReader reader = inserter.newReader();
+        RevWalk rw = new RevWalk(reader);
+        Timer1.Context<TemplatePhase> ignored = metrics.startTemplate(TemplatePhase.APPLY)) {
+      BatchRefUpdate batch = repo.getRefDatabase().newBatchUpdate();
+      batch.setAtomic(repo.getRefDatabase().performsAtomicTransactions());
+      batch.setAllowNonFastForwards(true);
 
-    try (Repository repo = repoManager.openRepository(Project.nameKey(projectTo))) {
-      ObjectInserter inserter = repo.newObjectInserter();
+      for (Map.Entry<String, List<RenderedTemplate>> branch : byBranch(templates).entrySet()) {
+        StagedBranch staged = stageBranch(repo, rw, reader, inserter, branch.getKey(), branch.getValue(), override);
+        ObjectId treeId = staged.index().writeTree(inserter);
+
+        // Re-applying a template with the same values changes nothing, keep the branch as it is
+        if (treeId.equals(staged.baseTree())) {
+          continue;
+        }
 
-      // Resolve current head commit and its tree for amend
-      ObjectId headCommitId = repo.resolve(to);
-      RevTree baseTree = null;
-      if (headCommitId != null) {
-        try (RevWalk rw = new RevWalk(repo)) {
-          RevCommit headCommit = rw.parseCommit(headCommitId);
-          baseTree = headCommit.getTree();
+        // Construct commit author/committer details
+        PersonIdent ident = new PersonIdent("Zenith", "zenith@notavailable.com");
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(treeId);
+        commit.setMessage(override ? "Overridden commit by Zenith" : "Amended commit by Zenith");
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        if (staged.headCommitId() != null) {
+          commit.setParentIds(staged.headCommitId());
         }
+
+        ObjectId commitId = inserter.insert(commit);
+        batch.addCommand(new ReceiveCommand(
+            staged.headCommitId() != null ? staged.headCommitId() : ObjectId.zeroId(), commitId, branch.getKey()));
       }
 
-      // Open an in-memory index and editor for staged changes
-      DirCache dc = DirCache.newInCore();
-      DirCacheEditor editor = dc.editor();
+      if (batch.getCommands().isEmpty()) {
+        return false;
+      }
+      inserter.flush();
+      metrics.templateInserted(inserter.insertedBytes());
 
-      Set<String> newFilePaths = gatherNewFilePaths(from, ref);
+      // Update or create all branches to point to their new commits
+      batch.execute(rw, NullProgressMonitor.INSTANCE);
 
-      if (!override && baseTree != null) {
-        try (TreeWalk treeWalk = new TreeWalk(repo)) {
-          treeWalk.addTree(baseTree);
-          treeWalk.setRecursive(true);
-          while (treeWalk.next()) {
-            String path = treeWalk.getPathString();
-            if (!newFilePaths.contains(path)) {
-              FileMode mode = treeWalk.getFileMode(0);
-              ObjectId objectId = treeWalk.getObjectId(0);
-              editor.add(new DirCacheEditor.PathEdit(path) {
-                @Override
-                public void apply(DirCacheEntry ent) {
-                  ent.setFileMode(mode);
-                  ent.setObjectId(objectId);
-                }
-              });
-            }
+      // Check for update errors
+      batch.getCommands().forEach(command -> metrics.templateRefUpdate(command.getResult()));
+      for (ReceiveCommand command : batch.getCommands()) {
+        if (command.getResult() != ReceiveCommand.Result.OK) {
+          throw new IOException("Failed to update ref " + command.getRefName() + ": " + command.getResult().name());
+        }
+      }
+      return true;
+    }
+  }
+
+  // Changes applying the templates would make to the branches of a project, nothing is written to the project.
+  // With diff each text change carries a unified diff of the file.
+  @SuppressWarnings("try")
+  public List<PreviewChange> preview(String projectTo, List<RenderedTemplate> templates, boolean override,
+      boolean diff) throws IOException {
+    List<PreviewChange> changes = new ArrayList<>();
+    try (Repository repo = repoManager.openRepository(Project.nameKey(projectTo));
+        ObjectInserter inserter = new DryRunInserter();
+        ObjectReader reader = repo.newObjectReader();
+        RevWalk rw = new RevWalk(reader);
+        Timer1.Context<TemplatePhase> ignored = metrics.startTemplate(TemplatePhase.PREVIEW)) {
+      for (Map.Entry<String, List<RenderedTemplate>> branch : byBranch(templates).entrySet()) {
+        StagedBranch staged = stageBranch(repo, rw, reader, inserter, branch.getKey(), branch.getValue(), override);
+
+        List<DiffEntry> entries;
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+          if (staged.baseTree() != null) {
+            treeWalk.addTree(staged.baseTree());
+          } else {
+            treeWalk.addTree(new EmptyTreeIterator());
           }
+          treeWalk.addTree(new DirCacheIterator(staged.index()));
+          treeWalk.setRecursive(true);
+          treeWalk.setFilter(TreeFilter.ANY_DIFF);
+          entries = DiffEntry.scan(treeWalk);
+        }
+
+        Map<String, RenderedFile> rendered = diff ? renderedFiles(branch.getValue()) : null;
+        for (DiffEntry entry : entries) {
+          String path = entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+          String patch = diff ? formatDiff(entry, reader, rendered) : null;
+          changes.add(new PreviewChange(branch.getKey(), entry.getChangeType(), path, patch));
         }
       }
+    }
+    return changes;
+  }
+
+  private static Map<String, List<RenderedTemplate>> byBranch(List<RenderedTemplate> templates) {
+    Map<String, List<RenderedTemplate>> templatesByBranch = new LinkedHashMap<>();
+    for (RenderedTemplate template : templates) {
+      templatesByBranch.computeIfAbsent(template.target().to(), k -> new ArrayList<>()).add(template);
+    }
+    return templatesByBranch;
+  }
+
+  // Index of a branch with the templates applied on top of its current files, unless they are discarded
+  private static StagedBranch stageBranch(Repository repo, RevWalk rw, ObjectReader reader, ObjectInserter inserter,
+      String to, List<RenderedTemplate> templates, boolean override) throws IOException {
+    // Resolve current head commit and its tree for amend
+    ObjectId headCommitId = repo.resolve(to);
+    RevTree baseTree = null;
+    if (headCommitId != null) {
+      RevCommit headCommit = rw.parseCommit(headCommitId);
+      baseTree = headCommit.getTree();
+    }
 
-      // Walk source repo and apply template logic
-      walkRepo(from, ref, editor, inserter, json);
+    // Open an in-memory index holding the current files, unless they are discarded
+    DirCache dc = DirCache.newInCore();
+    if (!override && baseTree != null) {
+      DirCacheBuilder builder = dc.builder();
+      builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, baseTree);
+      builder.finish();
+    }
 
+    // Template files replace current files with the same path, later templates win over earlier ones
+    for (RenderedTemplate template : templates) {
+      DirCacheEditor editor = dc.editor();
+      stage(template, editor, inserter, reader);
       editor.finish();
-      ObjectId treeId = dc.writeTree(inserter);
+    }
+    return new StagedBranch(headCommitId, baseTree, dc);
+  }
+
+  // Unified diff of one changed file, the new content is taken from the rendered templates
+  private static String formatDiff(DiffEntry entry, ObjectReader reader, Map<String, RenderedFile> rendered)
+      throws IOException {
+    byte[] oldContent = entry.getChangeType() == DiffEntry.ChangeType.ADD
+        ? new byte[0]
+        : diffContent(reader.open(entry.getOldId().toObjectId(), Constants.OBJ_BLOB));
+    byte[] newContent = entry.getChangeType() == DiffEntry.ChangeType.DELETE
+        ? new byte[0]
+        : renderedContent(entry.getNewPath(), rendered);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    String oldPath = entry.getChangeType() == DiffEntry.ChangeType.ADD ? "/dev/null" : "a/" + entry.getOldPath();
+    String newPath = entry.getChangeType() == DiffEntry.ChangeType.DELETE ? "/dev/null" : "b/" + entry.getNewPath();
+    if (RawText.isBinary(oldContent) || RawText.isBinary(newContent)) {
+      out.write(String.format("Binary files %s and %s differ%n", oldPath, newPath).getBytes(UTF_8));
+      return out.toString(UTF_8);
+    }
+    out.write(String.format("--- %s%n+++ %s%n", oldPath, newPath).getBytes(UTF_8));
+    RawText a = new RawText(oldContent);
+    RawText b = new RawText(newContent);
+    EditList edits = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM)
+        .diff(RawTextComparator.DEFAULT, a, b);
+    try (DiffFormatter formatter = new DiffFormatter(out)) {
+      formatter.format(edits, a, b);
+    }
+    return out.toString(UTF_8);
+  }
 
-      // Construct commit author/committer details
-      PersonIdent ident = new PersonIdent("Zenith", "zenith@notavailable.com");
-      CommitBuilder commit = new CommitBuilder();
-      commit.setTreeId(treeId);
-      commit.setMessage(override ? "Overridden commit by Zenith" : "Amended commit by Zenith");
-      commit.setAuthor(ident);
-      commit.setCommitter(ident);
-      if (headCommitId != null) {
-        commit.setParentIds(headCommitId);
+  // Files of the templates of a branch by path, later templates win over earlier ones like when staging
+  private static Map<String, RenderedFile> renderedFiles(List<RenderedTemplate> templates) {
+    Map<String, RenderedFile> rendered = new HashMap<>();
+    for (RenderedTemplate template : templates) {
+      for (int i = 0; i < template.files.size(); i++) {
+        rendered.put(template.files.get(i).path(), new RenderedFile(template, i));
       }
+    }
+    return rendered;
+  }
 
-      ObjectId commitId = inserter.insert(commit);
-      inserter.flush();
+  // Content of the file written to the path, passed through files are read from the template repository
+  private static byte[] renderedContent(String path, Map<String, RenderedFile> rendered) throws IOException {
+    RenderedFile file = rendered.get(path);
+    if (file == null) {
+      throw new IOException("No template writes " + path);
+    }
+    TemporaryBuffer content = file.template().contents.get(file.index());
+    if (content != null) {
+      return content.length() <= DIFF_LIMIT ? content.toByteArray() : TOO_LARGE_TO_DIFF;
+    }
+    try (ObjectReader reader = file.template().repo.newObjectReader()) {
+      return diffContent(reader.open(file.template().files.get(file.index()).blobId(), Constants.OBJ_BLOB));
+    }
+  }
 
-      // Update or create the specified branch to point to new commit
-      RefUpdate refUpdate = repo.updateRef(to);
-      refUpdate.setNewObjectId(commitId);
-      refUpdate.setForceUpdate(true);
-      RefUpdate.Result result = refUpdate.update();
+  private static byte[] diffContent(ObjectLoader loader) throws IOException {
+    return loader.getSize() <= DIFF_LIMIT ? loader.getCachedBytes(DIFF_LIMIT) : TOO_LARGE_TO_DIFF;
+  }
 
-      // Check for update errors
-      if (result != RefUpdate.Result.FORCED && result != RefUpdate.Result.FAST_FORWARD
-          && result != RefUpdate.Result.NEW) {
-        throw new RuntimeException("Failed to update ref: " + result.name());
+  // Stage the rendered files in path order, passed through files are copied when the target lacks them
+  private static void stage(RenderedTemplate template, DirCacheEditor editor, ObjectInserter inserter,
+      ObjectReader targetReader) throws IOException {
+    try (ObjectReader reader = template.repo.newObjectReader()) {
+      for (int i = 0; i < template.files.size(); i++) {
+        TemplateFile file = template.files.get(i);
+        TemporaryBuffer content = template.contents.get(i);
+        ObjectId blobId = content != null
+            ? insert(content, targetReader, inserter)
+            : copy(file.blobId(), reader, targetReader, inserter);
+        editor.add(new DirCacheEditor.PathEdit(file.path()) {
+          @Override
+          public void apply(DirCacheEntry ent) {
+            ent.setFileMode(file.mode());
+            ent.setObjectId(blobId);
+          }
+        });
       }
     }
   }
 
-  // Recursively walk a tree, apply a template to each file, and stage results in index
-  private void walkRepo(String repoName, String ref, DirCacheEditor editor, ObjectInserter inserter, Object json) throws IOException {
-    try (Repository repo = repoManager.openRepository(Project.nameKey(repoName))) {
+  // Files of the template in path order, excluded files are marked as passthrough without reading them
+  private List<TemplateFile> listFiles(Repository repo, String ref, ObjectReader reader) throws IOException {
+    List<TemplateFile> files = new ArrayList<>();
+    try (RevWalk revWalk = new RevWalk(reader)) {
       ObjectId revId = repo.resolve(ref);
-      try (RevWalk revWalk = new RevWalk(repo)) {
-        RevCommit commit = revWalk.parseCommit(revId);
-        RevTree tree = commit.getTree();
-        try (TreeWalk treeWalk = new TreeWalk(repo)) {
-          treeWalk.addTree(tree);
-          treeWalk.setRecursive(true);
-          while (treeWalk.next()) {
-            if (treeWalk.getFileMode(0).equals(FileMode.REGULAR_FILE)) {
-              ObjectId objectId = treeWalk.getObjectId(0);
-              try (ObjectReader reader = repo.newObjectReader()) {
-                // Read file data and process as Handlebars template
-                byte[] data = reader.open(objectId).getBytes();
-                Template template = engine.compileInline(new String(data, StandardCharsets.UTF_8));
-                String content = template.apply(json);
-                ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, content.getBytes());
-                String filePath = treeWalk.getPathString();
-                editor.add(new DirCacheEditor.PathEdit(filePath) {
-                  @Override
-                  public void apply(DirCacheEntry ent) {
-                    ent.setFileMode(FileMode.REGULAR_FILE);
-                    ent.setObjectId(blobId);
-                  }
-                });
-              }
-            }
+      RevCommit commit = revWalk.parseCommit(revId);
+      RevTree tree = commit.getTree();
+      IgnoreNode excludes = readExcludes(tree, reader);
+
+      try (TreeWalk treeWalk = new TreeWalk(reader)) {
+        treeWalk.addTree(tree);
+        treeWalk.setRecursive(true);
+        while (treeWalk.next()) {
+          FileMode mode = treeWalk.getFileMode(0);
+          String path = treeWalk.getPathString();
+          if ((mode.equals(FileMode.REGULAR_FILE) || mode.equals(FileMode.EXECUTABLE_FILE))
+              && !path.equals(IGNORE_FILE)) {
+            files.add(new TemplateFile(path, treeWalk.getObjectId(0), mode, isExcluded(excludes, path)));
           }
         }
       }
     }
+    return files;
   }
 
-  // Gather all file paths from a given ref in the repository
-  private Set<String> gatherNewFilePaths(String repoName, String ref) throws IOException {
-    Set<String> filePaths = new HashSet<>();
-    try (Repository repo = repoManager.openRepository(Project.nameKey(repoName))) {
-      ObjectId revId = repo.resolve(ref);
-      try (RevWalk revWalk = new RevWalk(repo)) {
-        RevCommit commit = revWalk.parseCommit(revId);
-        RevTree tree = commit.getTree();
-        try (TreeWalk treeWalk = new TreeWalk(repo)) {
-          treeWalk.addTree(tree);
-          treeWalk.setRecursive(true);
-          while (treeWalk.next()) {
-            if (treeWalk.getFileMode(0).equals(FileMode.REGULAR_FILE)) {
-              filePaths.add(treeWalk.getPathString());
-            }
+  // Exclude globs from the plugin config followed by the .zenithignore of the template, later rules win
+  private IgnoreNode readExcludes(RevTree tree, ObjectReader reader) throws IOException {
+    IgnoreNode excludes = new IgnoreNode();
+    String configured = String.join("\n", config.getTemplateExcludes());
+    excludes.parse(new ByteArrayInputStream(configured.getBytes(UTF_8)));
+    try (TreeWalk ignoreWalk = TreeWalk.forPath(reader, IGNORE_FILE, tree)) {
+      if (ignoreWalk != null) {
+        try (InputStream in = reader.open(ignoreWalk.getObjectId(0), Constants.OBJ_BLOB).openStream()) {
+          excludes.parse(IGNORE_FILE, in);
+        }
+      }
+    }
+    return excludes;
+  }
+
+  // Like git, a file inside an excluded directory cannot be included again
+  private static boolean isExcluded(IgnoreNode excludes, String path) {
+    for (int slash = path.indexOf('/'); slash > 0; slash = path.indexOf('/', slash + 1)) {
+      if (excludes.isIgnored(path.substring(0, slash), true) == IgnoreNode.MatchResult.IGNORED) {
+        return true;
+      }
+    }
+    return excludes.isIgnored(path, false) == IgnoreNode.MatchResult.IGNORED;
+  }
+
+  // Render the files in order with one reader, already rendered files are dropped when one fails
+  private List<TemporaryBuffer> renderAll(List<TemplateFile> files, ObjectReader reader, Object json) throws IOException {
+    List<TemporaryBuffer> rendered = new ArrayList<>(files.size());
+    try {
+      for (TemplateFile file : files) {
+        rendered.add(render(file, reader, json));
+      }
+      return rendered;
+    } catch (IOException | RuntimeException e) {
+      destroy(rendered);
+      throw e;
+    }
+  }
+
+  // Render chunks of files concurrently, each chunk with its own reader, results are returned in path order
+  private List<TemporaryBuffer> renderParallel(Repository repo, List<TemplateFile> files, Object json,
+      ExecutorService executor) throws IOException {
+    // Set on failure, chunks which did not start yet skip rendering
+    AtomicBoolean abandoned = new AtomicBoolean();
+    List<Future<List<TemporaryBuffer>>> chunks = new ArrayList<>();
+    for (List<TemplateFile> chunk : Lists.partition(files, RENDER_CHUNK)) {
+      chunks.add(executor.submit(() -> {
+        if (abandoned.get()) {
+          return List.of();
+        }
+        try (ObjectReader reader = repo.newObjectReader()) {
+          return renderAll(chunk, reader, json);
+        }
+      }));
+    }
+
+    List<TemporaryBuffer> rendered = new ArrayList<>(files.size());
+    int done = 0;
+    try {
+      for (Future<List<TemporaryBuffer>> chunk : chunks) {
+        rendered.addAll(chunk.get());
+        done++;
+      }
+      return rendered;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while rendering template " + repo.getIdentifier(), e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IOException("Cannot render template " + repo.getIdentifier(), e.getCause());
+    } finally {
+      if (done < chunks.size()) {
+        // Drop what was rendered so far. Cancelling a running chunk would not stop it and its output would be lost,
+        // so the remaining chunks are waited for and their output is dropped as well.
+        destroy(rendered);
+        abandoned.set(true);
+        for (Future<List<TemporaryBuffer>> chunk : chunks.subList(done, chunks.size())) {
+          try {
+            destroy(Uninterruptibles.getUninterruptibly(chunk));
+          } catch (ExecutionException | CancellationException e) {
+            // Nothing was kept by a failed chunk
           }
         }
       }
     }
-    return filePaths;
   }
+
+  // Process the file as Handlebars template, compiled once per blob, null when the file is passed through.
+  // Output is streamed into a buffer which spills to a temporary file once it outgrows RENDER_IN_CORE_LIMIT.
+  private TemporaryBuffer render(TemplateFile file, ObjectReader reader, Object json) throws IOException {
+    if (file.excluded()) {
+      return null;
+    }
+    Optional<Template> template = templateCache.get(file.blobId(), reader);
+    if (template.isEmpty()) {
+      return null;
+    }
+    TemporaryBuffer content = new TemporaryBuffer.LocalFile(null, RENDER_IN_CORE_LIMIT);
+    try (Writer writer = new OutputStreamWriter(content, UTF_8)) {
+      template.get().apply(json, writer);
+    } catch (IOException | RuntimeException e) {
+      content.destroy();
+      throw e;
+    }
+    return content;
+  }
+
+  // Insert rendered content unless the target repository already has it, large content is never held in memory
+  private static ObjectId insert(TemporaryBuffer content, ObjectReader targetReader, ObjectInserter inserter)
+      throws IOException {
+    if (content.length() <= RENDER_IN_CORE_LIMIT) {
+      return inserter.insert(Constants.OBJ_BLOB, content.toByteArray());
+    }
+    ObjectId blobId;
+    try (InputStream in = content.openInputStream()) {
+      blobId = inserter.idFor(Constants.OBJ_BLOB, content.length(), in);
+    }
+    if (targetReader.has(blobId, Constants.OBJ_BLOB)) {
+      return blobId;
+    }
+    try (InputStream in = content.openInputStream()) {
+      return inserter.insert(Constants.OBJ_BLOB, content.length(), in);
+    }
+  }
+
+  private static void destroy(List<TemporaryBuffer> rendered) {
+    for (TemporaryBuffer content : rendered) {
+      if (content != null) {
+        content.destroy();
+      }
+    }
+  }
+
+  // Make the template blob available in the target repository, streaming it over only when it is missing there
+  private static ObjectId copy(ObjectId blobId, ObjectReader reader, ObjectReader targetReader,
+      ObjectInserter inserter) throws IOException {
+    if (targetReader.has(blobId, Constants.OBJ_BLOB)) {
+      return blobId;
+    }
+    ObjectLoader loader = reader.open(blobId, Constants.OBJ_BLOB);
+    try (InputStream in = loader.openStream()) {
+      return inserter.insert(Constants.OBJ_BLOB, loader.getSize(), in);
+    }
+  }
+
+  // Computes ids of inserted objects without writing anything, used to preview a tree
+  private static class DryRunInserter extends ObjectInserter.Formatter {
+    @Override
+    public ObjectId insert(int type, byte[] data, int off, int len) {
+      return idFor(type, data, off, len);
+    }
+
+    @Override
+    public ObjectId insert(int type, long len, InputStream in) throws IOException {
+      return idFor(type, len, in);
+    }
+  }
+
+  // Computes ids of inserted objects first and only writes objects the repository does not have yet
+  private static class MissingObjectInserter extends ObjectInserter.Filter {
+    private final ObjectInserter delegate;
+    private final ObjectReader reader;
+    private long insertedBytes;
+
+    MissingObjectInserter(ObjectInserter delegate) {
+      this.delegate = delegate;
+      this.reader = delegate.newReader();
+    }
+
+    @Override
+    protected ObjectInserter delegate() {
+      return delegate;
+    }
+
+    @Override
+    public ObjectId insert(int type, byte[] data) throws IOException {
+      return insert(type, data, 0, data.length);
+    }
+
+    @Override
+    public ObjectId insert(int type, byte[] data, int off, int len) throws IOException {
+      ObjectId id = idFor(type, data, off, len);
+      if (reader.has(id, type)) {
+        return id;
+      }
+      insertedBytes += len;
+      return delegate.insert(type, data, off, len);
+    }
+
+    // Streams are only inserted after checking the repository lacks them
+    @Override
+    public ObjectId insert(int type, long len, InputStream in) throws IOException {
+      insertedBytes += len;
+      return delegate.insert(type, len, in);
+    }
+
+    // Uncompressed size of the objects written so far
+    long insertedBytes() {
+      return insertedBytes;
+    }
+
+    @Override
+    public void close() {
+      reader.close();
+      delegate.close();
+    }
+  }
+
+  // Template repository, its ref and the branch the template is applied to, parsed from "from@ref:to"
+  public record TemplateTarget(String from, String ref, String to) {
+    public static TemplateTarget parse(String target) {
+      String[] fromRefTo = target.split("[:@]");
+      return new TemplateTarget(fromRefTo[0], toRef(fromRefTo[1]), toRef(fromRefTo[2]));
+    }
+
+    private static String toRef(String branch) {
+      return branch.equals("refs/meta/config") ? branch : Constants.R_HEADS + branch;
+    }
+  }
+
+  // Rendered files of a template, holds the template repository open and the rendered output until closed.
+  // Apply may be called concurrently as the rendered output is only read.
+  public static class RenderedTemplate implements AutoCloseable {
+    private final TemplateTarget target;
+    private final Repository repo;
+    private final List<TemplateFile> files;
+    private final List<TemporaryBuffer> contents;
+
+    private RenderedTemplate(TemplateTarget target, Repository repo, List<TemplateFile> files,
+        List<TemporaryBuffer> contents) {
+      this.target = target;
+      this.repo = repo;
+      this.files = files;
+      this.contents = contents;
+    }
+
+    public TemplateTarget target() {
+      return target;
+    }
+
+    @Override
+    public void close() {
+      destroy(contents);
+      repo.close();
+    }
+  }
+
+  // Change applying templates would make to one file of a branch, diff is null unless requested
+  public record PreviewChange(String branch, DiffEntry.ChangeType type, String path, String diff) {}
+
+  private record StagedBranch(ObjectId headCommitId, RevTree baseTree, DirCache index) {}
+
+  private record TemplateFile(String path, ObjectId blobId, FileMode mode, boolean excluded) {}
+
+  private record RenderedFile(RenderedTemplate template, int index) {}
 }
@@ -0,0 +1,112 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.command;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
+import com.google.common.io.CharStreams;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Named;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Cache of compiled templates keyed by the id of their source blob, blobs never change so entries never go stale.
+// Binary blobs are cached as empty so they are inspected once and never decoded.
+@Singleton
+public class TemplateCache {
+  static final String CACHE_NAME = "templates";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, ObjectId.class, new TypeLiteral<Optional<Template>>() {})
+            .maximumWeight(16 << 20)
+            .weigher(TemplateWeigher.class);
+      }
+    };
+  }
+
+  private final Cache<ObjectId, Optional<Template>> cache;
+  private final Handlebars engine;
+
+  @Inject
+  TemplateCache(@Named(CACHE_NAME) Cache<ObjectId, Optional<Template>> cache, Handlebars engine) {
+    this.cache = cache;
+    this.engine = engine;
+  }
+
+  // Compiled template of the blob or empty for a binary blob, the blob is only read when it is not cached yet
+  public Optional<Template> get(ObjectId blobId, ObjectReader reader) throws IOException {
+    try {
+      return cache.get(blobId.copy(), () -> compile(reader.open(blobId)));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException cause) {
+        throw cause;
+      }
+      throw new IOException("Cannot compile template " + blobId.name(), e.getCause());
+    }
+  }
+
+  private Optional<Template> compile(ObjectLoader loader) throws IOException {
+    // Large blobs are inspected through their first bytes and decoded while streaming
+    if (loader.isLarge()) {
+      if (isBinary(loader)) {
+        return Optional.empty();
+      }
+      try (Reader source = new InputStreamReader(loader.openStream(), UTF_8)) {
+        return Optional.of(engine.compileInline(CharStreams.toString(source)));
+      }
+    }
+    byte[] raw = loader.getCachedBytes();
+    if (RawText.isBinary(raw)) {
+      return Optional.empty();
+    }
+    return Optional.of(engine.compileInline(new String(raw, UTF_8)));
+  }
+
+  private static boolean isBinary(ObjectLoader loader) throws IOException {
+    try (InputStream in = loader.openStream()) {
+      return RawText.isBinary(in);
+    }
+  }
+
+  static class TemplateWeigher implements Weigher<ObjectId, Optional<Template>> {
+    @Override
+    public int weigh(ObjectId key, Optional<Template> template) {
+      return 1 + template.map(t -> t.text().length()).orElse(0);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.command;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import tech.xederro.zenith.ZenithConfig;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Owns the bounded pool used to render files of a template repository in parallel
+@Singleton
+public class TemplateExecutor implements LifecycleListener {
+  private final int parallelism;
+  private volatile ExecutorService executor;
+
+  @Inject
+  TemplateExecutor(ZenithConfig config) {
+    this(config.getTemplateParallelism());
+  }
+
+  TemplateExecutor(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  // Empty when templates should be rendered on the calling thread
+  Optional<ExecutorService> executor() {
+    return Optional.ofNullable(executor);
+  }
+
+  @Override
+  public void start() {
+    if (parallelism > 1) {
+      executor = Executors.newFixedThreadPool(parallelism,
+          new ThreadFactoryBuilder().setNameFormat("Zenith-Template-%d").setDaemon(true).build());
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import java.util.*;
+
+// Compact encoding of the values of a tree, a node only carries the values it does not inherit unchanged from its parent
+public final class CompactValues {
+  private CompactValues() {}
+
+  // Values of the node that can not be reconstructed from the values of its parent
+  static Map<TreeKey, ProjectTree.Value> own(Map<TreeKey, ProjectTree.Value> values, Map<TreeKey, ProjectTree.Value> parentValues) {
+    Map<TreeKey, ProjectTree.Value> own = new HashMap<>();
+    for (Map.Entry<TreeKey, ProjectTree.Value> entry : values.entrySet()) {
+      if (!isReconstructed(entry.getKey(), entry.getValue(), parentValues)) {
+        own.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return own;
+  }
+
+  // Inheritable values of the parent the node does not have, e.g. blocked by an exclusive permission
+  static List<String> removed(Map<TreeKey, ProjectTree.Value> values, Map<TreeKey, ProjectTree.Value> parentValues) {
+    List<String> removed = new ArrayList<>();
+    for (TreeKey key : parentValues.keySet()) {
+      if (key.isInheritable() && !values.containsKey(key)) {
+        removed.add(key.toString());
+      }
+    }
+    Collections.sort(removed);
+    return removed;
+  }
+
+  // Effective values of a node from the effective values of its parent and its compact values
+  public static Map<TreeKey, ProjectTree.Value> expand(
+      Map<TreeKey, ProjectTree.Value> parentValues,
+      Map<TreeKey, ProjectTree.Value> own,
+      Collection<String> removed) {
+    Map<TreeKey, ProjectTree.Value> values = new HashMap<>(own);
+    Set<String> removedKeys = removed != null ? new HashSet<>(removed) : Set.of();
+    for (Map.Entry<TreeKey, ProjectTree.Value> entry : parentValues.entrySet()) {
+      TreeKey key = entry.getKey();
+      if (key.isInheritable() && !values.containsKey(key) && !removedKeys.contains(key.toString())) {
+        values.put(key, new ProjectTree.Value(entry.getValue().value(), true));
+      }
+    }
+    return values;
+  }
+
+  // Replace the values of the whole tree with the compact ones, the roots keep all of their values
+  public static void compactTree(ProjectTree.ProjectData node, Map<TreeKey, ProjectTree.Value> parentValues) {
+    Map<TreeKey, ProjectTree.Value> values = node.values != null ? node.values : Map.of();
+    for (ProjectTree.ProjectData child : node.children) {
+      compactTree(child, values);
+    }
+    if (node.values != null) {
+      List<String> removed = removed(values, parentValues);
+      node.values = own(values, parentValues);
+      node.removed = removed.isEmpty() ? null : removed;
+    }
+  }
+
+  // Reverse of compactTree, restores the effective values of every node
+  public static void expandTree(ProjectTree.ProjectData node, Map<TreeKey, ProjectTree.Value> parentValues) {
+    if (node.values != null) {
+      node.values = expand(parentValues, node.values, node.removed);
+      node.removed = null;
+    }
+    Map<TreeKey, ProjectTree.Value> values = node.values != null ? node.values : Map.of();
+    for (ProjectTree.ProjectData child : node.children) {
+      expandTree(child, values);
+    }
+  }
+
+  private static boolean isReconstructed(TreeKey key, ProjectTree.Value value, Map<TreeKey, ProjectTree.Value> parentValues) {
+    if (!key.isInheritable() || !Boolean.TRUE.equals(value.isInherited())) {
+      return false;
+    }
+    ProjectTree.Value parentValue = parentValues.get(key);
+    return parentValue != null && Objects.equals(parentValue.value(), value.value());
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.gerrit.extensions.restapi.*;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import org.kohsuke.args4j.Option;
+import tech.xederro.zenith.ZenithMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProjectChildrenRest implements RestReadView<ConfigResource> {
+  private final ProjectTree projectTree;
+  private final ZenithMetrics metrics;
+
+  private String project;
+  private boolean compact;
+  private final List<String> keys = new ArrayList<>();
+  private final List<String> keyPrefixes = new ArrayList<>();
+
+  @Inject
+  ProjectChildrenRest(ProjectTree projectTree, ZenithMetrics metrics) {
+    this.projectTree = projectTree;
+    this.metrics = metrics;
+  }
+
+  @Option(name = "--project", metaVar = "PROJECT", required = true, usage = "project to list the children of")
+  private void project(String arg) {
+    this.project = arg;
+  }
+
+  @Option(name = "--compact", usage = "only return the values a project does not inherit unchanged from its parent")
+  private void compact(boolean arg) {
+    this.compact = arg;
+  }
+
+  @Option(name = "--key", metaVar = "KEY", usage = "only compute the given value, can be repeated")
+  private void key(String arg) {
+    this.keys.add(arg);
+  }
+
+  @Option(name = "--key-prefix", metaVar = "PREFIX", usage = "only compute values starting with the prefix, can be repeated")
+  private void keyPrefix(String arg) {
+    this.keyPrefixes.add(arg);
+  }
+
+  @Override
+  public Response<List<ProjectTree.ProjectData>> apply(ConfigResource resource) throws AuthException, BadRequestException, ResourceConflictException, Exception {
+    ValueFilter filter = ValueFilter.of(keys, keyPrefixes);
+    try {
+      ProjectTree.ProjectData parent = projectTree.fillTree(projectTree.rootsFromProject(project, 1), filter);
+      metrics.treeResponse(parent.children.size());
+      if (compact) {
+        // the caller already has the values of the parent
+        for (ProjectTree.ProjectData child : parent.children) {
+          projectTree.compactTree(child, parent.values);
+        }
+      }
+      return Response.ok(parent.children);
+    } finally {
+      projectTree.finish("children of " + project);
+    }
+  }
+}
@@ -18,36 +18,167 @@
 package tech.xederro.zenith.endpoint;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.gerrit.entities.*;
 import com.google.gerrit.extensions.api.GerritApi;
-import com.google.gerrit.extensions.api.projects.ConfigInfo;
 import com.google.gerrit.extensions.client.InheritableBoolean;
-import com.google.gerrit.extensions.client.ProjectState;
 import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.extensions.common.ProjectInfo;
 import com.google.gerrit.extensions.restapi.*;
+import com.google.gerrit.server.logging.LoggingContext;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.ProjectPermission;
 import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.util.RequestContext;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Inject;
+import org.eclipse.jgit.lib.ObjectId;
+import tech.xederro.zenith.ZenithMetrics.NodeResult;
+import tech.xederro.zenith.ZenithMetrics.TreePhase;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 
+// Serves a single request, the trace covers everything done by the instance
 public class ProjectTree {
+  // Number of parents combined into one children query
+  private static final int QUERY_CHUNK = 100;
+  private static final ValuesAdapter VALUES_ADAPTER = new ValuesAdapter();
+
   private final GerritApi gerritApi;
   private final ProjectCache projectCache;
+  private final PermissionBackend permissionBackend;
+  private final ProjectTreeCache projectTreeCache;
+  private final ProjectTreeExecutor projectTreeExecutor;
+  private final ThreadLocalRequestContext requestContext;
+  private final TreeTrace trace;
 
   @Inject
-  ProjectTree(GerritApi gerritApi, ProjectCache projectCache) {
+  ProjectTree(
+      GerritApi gerritApi,
+      ProjectCache projectCache,
+      PermissionBackend permissionBackend,
+      ProjectTreeCache projectTreeCache,
+      ProjectTreeExecutor projectTreeExecutor,
+      ThreadLocalRequestContext requestContext,
+      TreeTrace trace) {
     this.gerritApi = gerritApi;
     this.projectCache = projectCache;
+    this.permissionBackend = permissionBackend;
+    this.projectTreeCache = projectTreeCache;
+    this.projectTreeExecutor = projectTreeExecutor;
+    this.requestContext = requestContext;
+    this.trace = trace;
+  }
+
+  // Roots of the tree matching the query, nodes deeper than the depth are only counted
+  @SuppressWarnings("try")
+  public List<ProjectData> rootsFromQuery(String query, int depth) throws RestApiException {
+    List<ProjectInfo> projectInfoList;
+    try (TreeTrace.Span ignored = trace.phase(TreePhase.QUERY)) {
+      projectInfoList = gerritApi.projects().query().withQuery(query).get();
+    }
+    try (TreeTrace.Span ignored = trace.phase(TreePhase.BUILD)) {
+      List<ProjectData> roots = buildRoots(projectInfoList);
+      truncate(roots, depth);
+      return roots;
+    }
+  }
+
+  // Subtree below the given project, every level is loaded with a single query for the children of the previous one
+  @SuppressWarnings("try")
+  public List<ProjectData> rootsFromProject(String name, int depth) throws RestApiException {
+    try (TreeTrace.Span ignored = trace.phase(TreePhase.QUERY)) {
+      return queryRoots(name, depth);
+    }
+  }
+
+  private List<ProjectData> queryRoots(String name, int depth) throws RestApiException {
+    ProjectInfo info = gerritApi.projects().name(name).get();
+    ProjectData root = new ProjectData(info.name, info.parent, new ArrayList<>(), null);
+
+    List<ProjectData> level = List.of(root);
+    for (int i = 0; i < depth && !level.isEmpty(); i++) {
+      Map<String, List<ProjectInfo>> children = queryChildren(level);
+      List<ProjectData> next = new ArrayList<>();
+      for (ProjectData node : level) {
+        for (ProjectInfo child : children.getOrDefault(node.name, List.of())) {
+          ProjectData data = new ProjectData(child.name, child.parent, new ArrayList<>(), null);
+          node.children.add(data);
+          next.add(data);
+        }
+      }
+      level = next;
+    }
+
+    // the deepest level only reports how many children it has
+    if (!level.isEmpty()) {
+      Map<String, List<ProjectInfo>> children = queryChildren(level);
+      for (ProjectData node : level) {
+        node.childCount = children.getOrDefault(node.name, List.of()).size();
+      }
+    }
+    return List.of(root);
+  }
+
+  @SuppressWarnings("try")
+  public ProjectData fillTree(List<ProjectData> roots, ValueFilter filter) {
+    try (TreeTrace.Span ignored = trace.phase(TreePhase.FILL)) {
+      fill(roots, filter);
+    }
+
+    if (roots.size() == 1) {
+      return roots.getFirst();
+    } else {
+      return new ProjectData("root", null, roots, null);
+    }
+  }
+
+  // Drop the values of the tree inherited unchanged from the base or the parent of a node
+  @SuppressWarnings("try")
+  public void compactTree(ProjectData tree, Map<TreeKey, Value> base) {
+    try (TreeTrace.Span ignored = trace.phase(TreePhase.COMPACT)) {
+      CompactValues.compactTree(tree, base);
+    }
+  }
+
+  // End of the request, slow requests are logged with the time spent in every phase
+  public void finish(String request) {
+    trace.finish(request);
   }
 
-  public ProjectData treeFromQuery(String query) throws RestApiException {
-    List<ProjectInfo> projectInfoList = gerritApi.projects().query().withQuery(query).get();
-    return buildTree(projectInfoList);
+  private void fill(List<ProjectData> roots, ValueFilter filter) {
+    // fill with data, subtrees are independent once the parent is filled
+    Optional<ForkJoinPool> pool = projectTreeExecutor.pool();
+    if (pool.isPresent()) {
+      RequestContext context = requestContext.getContext();
+      List<FillTask> tasks = roots.stream().map(project -> {
+        FilledNode above = fillAncestors(project, filter);
+        return new FillTask(project, above.values(), above.key(), context);
+      }).toList();
+      tasks.forEach(pool.get()::execute);
+      tasks.forEach(ForkJoinTask::join);
+    } else {
+      for (ProjectData project : roots) {
+        FilledNode above = fillAncestors(project, filter);
+        fillWithData(project, above.values(), above.key());
+      }
+    }
+  }
+
+  ProjectData buildTree(List<ProjectInfo> projectInfoList, ValueFilter filter) {
+    return fillTree(buildRoots(projectInfoList), filter);
   }
 
-  ProjectData buildTree(List<ProjectInfo> projectInfoList) {
+  List<ProjectData> buildRoots(List<ProjectInfo> projectInfoList) {
     Map<String, ProjectData> projectMap = new HashMap<>();
 
     for (ProjectInfo data : projectInfoList) {
@@ -64,17 +195,148 @@ public class ProjectTree {
         roots.add(data);
       }
     });
+    return roots;
+  }
 
-    // fill with data
-    for (ProjectData project : roots) {
-      fillWithData(project, null);
+  // Cut the tree below the given depth, the cut nodes keep the number of their children
+  static void truncate(List<ProjectData> nodes, int depth) {
+    for (ProjectData node : nodes) {
+      if (depth <= 0) {
+        node.childCount = node.children.size();
+        node.children = new ArrayList<>();
+      } else {
+        truncate(node.children, depth - 1);
+      }
     }
+  }
 
+  // Write the tree as JSON, computing every node right before it is written and releasing its values afterwards
+  @SuppressWarnings("try")
+  public void writeTree(List<ProjectData> roots, ValueFilter filter, boolean compact, JsonWriter writer) throws IOException {
+    try (TreeTrace.Span ignored = trace.phase(TreePhase.STREAM)) {
+      write(roots, filter, compact, writer);
+    }
+  }
+
+  private void write(List<ProjectData> roots, ValueFilter filter, boolean compact, JsonWriter writer) throws IOException {
+    // roots are always written with all of their values
+    Map<TreeKey, Value> compactBase = compact ? Map.of() : null;
     if (roots.size() == 1) {
-      return roots.getFirst();
+      FilledNode above = fillAncestors(roots.getFirst(), filter);
+      writeNode(roots.getFirst(), above.values(), above.key(), compactBase, writer);
     } else {
-      return new ProjectData("root", null, roots, null);
+      writer.beginObject();
+      writer.name("name").value("root");
+      writer.name("children").beginArray();
+      for (ProjectData project : roots) {
+        FilledNode above = fillAncestors(project, filter);
+        writeNode(project, above.values(), above.key(), compactBase, writer);
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+  }
+
+  // Values a root inherits from ancestors that are not part of the tree, all of them come from the cache after the first request
+  private FilledNode fillAncestors(ProjectData root, ValueFilter filter) {
+    Optional<ProjectState> state = projectCache.get(Project.nameKey(root.name));
+    if (state.isEmpty()) {
+      return new FilledNode(null, ProjectTreeCache.Key.root(filter));
+    }
+
+    // only ancestors up to the first one hidden from the caller pass their values down
+    ImmutableList<ProjectState> parents = state.get().parents().toList();
+    int visible = 0;
+    while (visible < parents.size() && isVisible(parents.get(visible).getName())) {
+      visible++;
     }
+
+    // hidden ancestors still decide inherited config values, so their revisions are part of the key
+    ImmutableList.Builder<String> hiddenProjects = ImmutableList.builder();
+    ImmutableList.Builder<ObjectId> hiddenRevisions = ImmutableList.builder();
+    for (ProjectState ancestor : parents.subList(visible, parents.size()).reverse()) {
+      hiddenProjects.add(ancestor.getName());
+      hiddenRevisions.add(ancestor.getConfig().getRevision().orElse(ObjectId.zeroId()));
+    }
+    FilledNode filled = new FilledNode(
+        null, ProjectTreeCache.Key.root(filter, hiddenProjects.build(), hiddenRevisions.build()));
+
+    // walk from the top of the hierarchy down to the direct parent
+    for (ProjectState ancestor : parents.subList(0, visible).reverse()) {
+      ProjectState parentState = parentOf(ancestor);
+      ProjectData data = new ProjectData(
+          ancestor.getName(), parentState != null ? parentState.getName() : null, List.of(), null);
+      filled = fillNode(data, filled.values(), filled.key());
+    }
+    return filled;
+  }
+
+  // Direct children of the given projects grouped by parent, only projects visible to the caller are returned
+  private Map<String, List<ProjectInfo>> queryChildren(List<ProjectData> parents) throws RestApiException {
+    Map<String, List<ProjectInfo>> children = new HashMap<>();
+    for (List<ProjectData> chunk : Lists.partition(parents, QUERY_CHUNK)) {
+      String query = chunk.stream()
+          .map(node -> "parent:\"" + node.name + "\"")
+          .collect(Collectors.joining(" OR "));
+      for (ProjectInfo info : queryAll(query)) {
+        children.computeIfAbsent(info.parent, k -> new ArrayList<>()).add(info);
+      }
+    }
+    children.values().forEach(list -> list.sort(Comparator.comparing(info -> info.name)));
+    return children;
+  }
+
+  private List<ProjectInfo> queryAll(String query) throws RestApiException {
+    List<ProjectInfo> result = new ArrayList<>();
+    while (true) {
+      List<ProjectInfo> page = gerritApi.projects().query().withQuery(query).withStart(result.size()).get();
+      if (page.isEmpty()) {
+        return result;
+      }
+      result.addAll(page);
+    }
+  }
+
+  private void writeNode(
+      ProjectData node,
+      Map<TreeKey, Value> parentValues,
+      ProjectTreeCache.Key parentKey,
+      Map<TreeKey, Value> compactBase,
+      JsonWriter writer) throws IOException {
+    FilledNode filled = fillNode(node, parentValues, parentKey);
+    Map<TreeKey, Value> values = compactBase != null ? CompactValues.own(node.values, compactBase) : node.values;
+
+    writer.beginObject();
+    writer.name("name").value(node.name);
+    if (node.parent != null) {
+      writer.name("parent").value(node.parent);
+    }
+    writer.name("values");
+    VALUES_ADAPTER.write(writer, values);
+    if (compactBase != null) {
+      List<String> removed = CompactValues.removed(node.values, compactBase);
+      if (!removed.isEmpty()) {
+        writer.name("removed").beginArray();
+        for (String key : removed) {
+          writer.value(key);
+        }
+        writer.endArray();
+      }
+    }
+
+    // children only need the processed permissions
+    node.values = null;
+
+    writer.name("children").beginArray();
+    for (ProjectData child : node.children) {
+      writeNode(child, filled.values(), filled.key(),
+          compactBase != null ? filled.values() : null, writer);
+    }
+    writer.endArray();
+    if (node.childCount != null) {
+      writer.name("child_count").value(node.childCount);
+    }
+    writer.endObject();
   }
 
   private void fillChildren(Map<String, ProjectData> projectMap, ProjectInfo node) {
@@ -85,111 +347,147 @@ public class ProjectTree {
     // create node
     projectMap.put(node.name, new ProjectData(node.name, node.parent, new ArrayList<>(), null));
 
-    // process parent
-    ProjectInfo parentInfo = null;
-    if (node.parent != null) {
-      try {
-        parentInfo = gerritApi.projects().name(node.parent).get();
-      } catch (RestApiException ignored) {}
+    // process ancestors through the project cache, stopping at the first one already known
+    String parentName = node.parent;
+    while (parentName != null && !projectMap.containsKey(parentName)) {
+      Optional<ProjectState> parentState = projectCache.get(Project.nameKey(parentName));
+      if (parentState.isEmpty() || !isVisible(parentName)) {
+        break; // unknown or hidden parent, keep it as a root
+      }
+      ProjectState grandParentState = parentOf(parentState.get());
+      String grandParentName = grandParentState != null ? grandParentState.getName() : null;
+      projectMap.put(parentName, new ProjectData(parentName, grandParentName, new ArrayList<>(), null));
+      parentName = grandParentName;
     }
-    fillChildren(projectMap, parentInfo);
   }
 
-  private void fillWithData(ProjectData node, Map<String, Value> parentProcessedPermissions) {
-    Map<String, Value> val = new HashMap<>();
-    Map<String, AccessSection> currentAccessSections;
-    Map<String, LabelType> currentLabelsSections;
-    Map<String, String> currentPluginConfigs;
-    Map<String, ImmutableList<String>> currentExtensionPanelSections;
-    try {
-      val.put("parent", new Value(node.parent, false));
-      val.putAll(getConfigInfo(gerritApi.projects().name(node.name).config()));
-
-      CachedProjectConfig cachedConfig = projectCache.get(Project.nameKey(node.name))
-          .orElseThrow(ProjectCache.illegalState(Project.nameKey(node.name))).getConfig();
+  private void fillWithData(
+      ProjectData node,
+      Map<TreeKey, Value> parentValues,
+      ProjectTreeCache.Key parentKey) {
+    FilledNode filled = fillNode(node, parentValues, parentKey);
 
-      currentAccessSections = cachedConfig.getAccessSections();
-      currentLabelsSections = cachedConfig.getLabelSections();
-      currentPluginConfigs = cachedConfig.getPluginConfigs();
-      currentExtensionPanelSections = cachedConfig.getExtensionPanelSections();
+    for (ProjectData child : node.children) {
+      fillWithData(child, filled.values(), filled.key());
+    }
+  }
 
-      Map<String, Value> accessValues = processAccessSections(currentAccessSections, parentProcessedPermissions);
-      val.putAll(accessValues);
+  @SuppressWarnings("try")
+  private FilledNode fillNode(
+      ProjectData node,
+      Map<TreeKey, Value> parentValues,
+      ProjectTreeCache.Key parentKey) {
+    Map<TreeKey, Value> val;
+    ProjectTreeCache.Key key = parentKey;
+    try {
+      ProjectState state = projectCache.get(Project.nameKey(node.name))
+          .orElseThrow(ProjectCache.illegalState(Project.nameKey(node.name)));
+
+      // values depend on the config of the project and of all its ancestors
+      key = ProjectTreeCache.Key.child(parentKey, node.name, state.getConfig().getRevision().orElse(ObjectId.zeroId()));
+      ValueMap[] computed = new ValueMap[1];
+      val = projectTreeCache.get(key, () -> {
+        try (TreeTrace.Span ignored = trace.loadProject(node.name)) {
+          return computed[0] = loadValues(node, state, parentValues, parentKey.filter());
+        }
+      });
+      trace.node(computed[0] != null ? NodeResult.COMPUTED : NodeResult.CACHED);
+    } catch (Exception e) {
+      val = ValueMap.of(Map.of(TreeKey.PARENT, new Value(node.parent, false)));
+      trace.node(NodeResult.FAILED);
+    }
 
-      Map<String, Value> labelValues = processLabelsSections(currentLabelsSections, parentProcessedPermissions);
-      val.putAll(labelValues);
+    node.values = val;
 
-      Map<String, Value> processValues = processPluginConfigs(currentPluginConfigs, parentProcessedPermissions);
-      val.putAll(processValues);
+    // children layer their values over the values of this node
+    return new FilledNode(val, key);
+  }
 
-      Map<String, Value> processExtensionPanelSections = processExtensionPanelSections(currentExtensionPanelSections, parentProcessedPermissions);
-      val.putAll(processExtensionPanelSections);
+  private ValueMap loadValues(
+      ProjectData node,
+      ProjectState state,
+      Map<TreeKey, Value> parentValues,
+      ValueFilter filter) {
+    long stageStart = System.nanoTime();
+    Map<TreeKey, Value> own = new HashMap<>();
+    own.put(TreeKey.PARENT, new Value(node.parent, false));
+    own.putAll(getConfigValues(state));
+    stageStart = trace.stage(TreeKey.Kind.CONFIG, stageStart);
+
+    CachedProjectConfig cachedConfig = state.getConfig();
+
+    // only run the stages that can produce selected keys, the parent map was filtered the same way
+    Map<TreeKey.Kind, ValueMap> stages = new EnumMap<>(TreeKey.Kind.class);
+    if (filter.mayMatchAccess()) {
+      Map<String, AccessSection> currentAccessSections = cachedConfig.getAccessSections();
+      stages.put(TreeKey.Kind.ACCESS, processAccessSections(currentAccessSections, parentValues));
+      stageStart = trace.stage(TreeKey.Kind.ACCESS, stageStart);
+    }
 
-    } catch (Exception ignored) {}
+    if (filter.mayMatchPrefix(ValueFilter.LABEL_PREFIX)) {
+      Map<String, LabelType> currentLabelsSections = cachedConfig.getLabelSections();
+      stages.put(TreeKey.Kind.LABEL, processLabelsSections(currentLabelsSections, parentValues));
+      stageStart = trace.stage(TreeKey.Kind.LABEL, stageStart);
+    }
 
-    node.values = val;
+    if (filter.mayMatchPrefix(ValueFilter.PLUGIN_PREFIX)) {
+      Map<String, String> currentPluginConfigs = cachedConfig.getPluginConfigs();
+      stages.put(TreeKey.Kind.PLUGIN, processPluginConfigs(currentPluginConfigs, parentValues));
+      stageStart = trace.stage(TreeKey.Kind.PLUGIN, stageStart);
+    }
 
-    Map<String, Value> processedPermissions = val.entrySet().stream()
-        .filter(e -> e.getKey().contains(" ") && e.getKey().split(" ").length >= 3)
-        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    if (filter.mayMatchPrefix(ValueFilter.EXTENSION_PANEL_PREFIX)) {
+      Map<String, ImmutableList<String>> currentExtensionPanelSections = cachedConfig.getExtensionPanelSections();
+      stages.put(TreeKey.Kind.EXTENSION_PANEL, processExtensionPanelSections(currentExtensionPanelSections, parentValues));
+      trace.stage(TreeKey.Kind.EXTENSION_PANEL, stageStart);
+    }
 
-    for (ProjectData child : node.children) {
-      fillWithData(child, processedPermissions);
+    stages.values().forEach(stage -> own.putAll(stage.own()));
+    if (!filter.isAll()) {
+      own.keySet().removeIf(key -> !filter.matches(key.toString()));
     }
+    trace.computedKeys(own.size());
+
+    // inherited values were filtered for the parent already, cached values are shared between requests
+    return ValueMap.of(parentValues, own, key -> {
+      ValueMap stage = stages.get(key.kind());
+      return stage != null && key.isInheritable() && stage.inherits(key);
+    });
   }
 
-  Map<String, Value> processExtensionPanelSections(
+  ValueMap processExtensionPanelSections(
       Map<String, ImmutableList<String>> currentExtensionPanelSections,
-      Map<String, Value> parentProcessedPermissions) {
-    Map<String, Value> result = new HashMap<>();
+      Map<TreeKey, Value> parentValues) {
+    Map<TreeKey, Value> result = new HashMap<>();
     if (currentExtensionPanelSections == null) {
       currentExtensionPanelSections = new HashMap<>();
     }
-    if (parentProcessedPermissions == null) {
-      parentProcessedPermissions = new HashMap<>();
-    }
     for (Map.Entry<String, ImmutableList<String>> entry : currentExtensionPanelSections.entrySet()) {
       String panelName = entry.getKey();
       ImmutableList<String> panelValues = entry.getValue();
 
-      String key = "extension_panel " + panelName;
+      TreeKey key = TreeKey.extensionPanel(panelName);
       String value = String.join(",", panelValues);
 
       result.put(key, new Value(value, false));
     }
 
-    for (Map.Entry<String, Value> entry : parentProcessedPermissions.entrySet()) {
-      String key = entry.getKey();
-
-      if (!key.startsWith("extension_panel ")) {
-        continue;
-      }
-
-      boolean isOverridden = result.containsKey(key);
-
-      if (!isOverridden) {
-        result.put(key, new Value(entry.getValue().value(), true));
-      }
-    }
-
-    return result;
+    // parent values are shared, not copied
+    return ValueMap.of(parentValues, result, key -> key.kind() == TreeKey.Kind.EXTENSION_PANEL);
   }
 
-  Map<String, Value> processPluginConfigs(
+  ValueMap processPluginConfigs(
       Map<String, String> currentPluginConfigs,
-      Map<String, Value> parentProcessedPermissions) {
-    Map<String, Value> result = new HashMap<>();
+      Map<TreeKey, Value> parentValues) {
+    Map<TreeKey, Value> result = new HashMap<>();
 
     if (currentPluginConfigs == null) {
       currentPluginConfigs = new HashMap<>();
     }
 
-    if (parentProcessedPermissions == null) {
-      parentProcessedPermissions = new HashMap<>();
-    }
 
     for (Map.Entry<String, String> entry : currentPluginConfigs.entrySet()) {
-      String key = "plugin " + entry.getKey();
+      String pluginName = entry.getKey();
       List<String> pluginValues = Arrays.stream(entry
           .getValue()
           .replaceAll("[ \t\n\r]+", " ")
@@ -207,41 +505,25 @@ public class ProjectTree {
       for (String value : pluginValues) {
         int idx = value.lastIndexOf(' ');
         String pluginValue = value.substring(0, idx);
-        result.put((key + " " + pluginKey).replaceAll(" +", " "), new Value(pluginValue, false));
+        result.put(TreeKey.plugin(pluginName, pluginKey.strip()), new Value(pluginValue, false));
         pluginKey = value.substring(idx + 1);
       }
 
-      result.put((key + " " + pluginKey).replaceAll(" +", " "), new Value(lastValue, false));
-    }
-
-    for (Map.Entry<String, Value> entry : parentProcessedPermissions.entrySet()) {
-      String key = entry.getKey();
-
-      if (!key.startsWith("plugin ")) {
-        continue;
-      }
-
-      boolean isOverridden = result.containsKey(key);
-
-      if (!isOverridden) {
-        result.put(key, new Value(entry.getValue().value(), true));
-      }
+      result.put(TreeKey.plugin(pluginName, pluginKey.strip()), new Value(lastValue, false));
     }
 
-    return result;
+    // parent values are shared, not copied
+    return ValueMap.of(parentValues, result, key -> key.kind() == TreeKey.Kind.PLUGIN);
   }
 
-  Map<String, Value> processLabelsSections(
+  ValueMap processLabelsSections(
       Map<String, LabelType> currentLabelsSections,
-      Map<String, Value> parentProcessedPermissions) {
+      Map<TreeKey, Value> parentValues) {
 
-    Map<String, Value> result = new HashMap<>();
+    Map<TreeKey, Value> result = new HashMap<>();
     if (currentLabelsSections == null) {
       currentLabelsSections = new HashMap<>();
     }
-    if (parentProcessedPermissions == null) {
-      parentProcessedPermissions = new HashMap<>();
-    }
 
     for (Map.Entry<String, LabelType> entry : currentLabelsSections.entrySet()) {
       String labelName = entry.getKey();
@@ -254,8 +536,6 @@ public class ProjectTree {
           : List.of("*");
 
       for (String refPattern : patterns) {
-        String key = "label " + labelName + " " + refPattern;
-
         LabelValue min = labelType.getMin();
         LabelValue max = labelType.getMax();
 
@@ -270,102 +550,66 @@ public class ProjectTree {
           value = "0...0";
         }
 
-        result.put(key + " label-range", new Value(value, false));
-        result.put(key + " label-function", new Value(labelType.getFunction().getFunctionName(), false));
+        result.put(TreeKey.label(labelName, refPattern, "label-range"), new Value(value, false));
+        result.put(TreeKey.label(labelName, refPattern, "label-function"), new Value(labelType.getFunction().getFunctionName(), false));
 
         labelType.getCopyCondition().ifPresentOrElse(
-            condition ->  result.put(key + " label-copy-condition", new Value(condition, false)),
-            () -> result.put(key + " label-copy-condition", new Value("NONE", false)));
+            condition ->  result.put(TreeKey.label(labelName, refPattern, "label-copy-condition"), new Value(condition, false)),
+            () -> result.put(TreeKey.label(labelName, refPattern, "label-copy-condition"), new Value("NONE", false)));
 
 
-        result.put(key + " label-default-value", new Value(Short.valueOf(labelType.getDefaultValue()).toString(), false));
-        result.put(key + " label-ignore-self-approval", new Value(Boolean.valueOf(labelType.isIgnoreSelfApproval()).toString().toUpperCase(), false));
-        result.put(key + " label-allow-post-submit", new Value(Boolean.valueOf(labelType.isAllowPostSubmit()).toString().toUpperCase(), false));
+        result.put(TreeKey.label(labelName, refPattern, "label-default-value"), new Value(Short.valueOf(labelType.getDefaultValue()).toString(), false));
+        result.put(TreeKey.label(labelName, refPattern, "label-ignore-self-approval"), new Value(Boolean.valueOf(labelType.isIgnoreSelfApproval()).toString().toUpperCase(), false));
+        result.put(TreeKey.label(labelName, refPattern, "label-allow-post-submit"), new Value(Boolean.valueOf(labelType.isAllowPostSubmit()).toString().toUpperCase(), false));
       }
     }
 
-    for (Map.Entry<String, Value> entry : parentProcessedPermissions.entrySet()) {
-      String key = entry.getKey();
-
-      if (!key.startsWith("label ")) {
-        continue;
-      }
-
-      boolean isOverridden = result.containsKey(key);
-
-      if (!isOverridden) {
-        result.put(key, new Value(entry.getValue().value(), true));
-      }
-    }
-
-    return result;
+    // parent values are shared, not copied
+    return ValueMap.of(parentValues, result, key -> key.kind() == TreeKey.Kind.LABEL);
   }
 
-  Map<String, Value> processAccessSections(
+  ValueMap processAccessSections(
       Map<String, AccessSection> currentSections,
-      Map<String, Value> parentProcessedPermissions) {
+      Map<TreeKey, Value> parentValues) {
 
-    Map<String, Value> result = new HashMap<>();
+    Map<TreeKey, Value> result = new HashMap<>();
 
     if (currentSections == null) {
       currentSections = new HashMap<>();
     }
-    if (parentProcessedPermissions == null) {
-      parentProcessedPermissions = new HashMap<>();
-    }
 
-    // Process current sections and track exclusive groups to handle removals
-    Map<String, Set<String>> exclusiveGroups = new HashMap<>();
+    // Process current sections and track exclusive permissions to handle removals
+    Map<String, Set<String>> exclusivePermissions = new HashMap<>();
     for (Map.Entry<String, AccessSection> entry : currentSections.entrySet()) {
       String accessName = entry.getKey();
       AccessSection section = entry.getValue();
 
       for (Permission permission : section.getPermissions()) {
         String permissionName = permission.getName();
-        String key = accessName + " " + permissionName;
 
         for (PermissionRule rule : permission.getRules()) {
           String groupName = rule.getGroup().getName().replace(" ", "-");
-          String fullKey = key + " " + groupName;
+          TreeKey fullKey = TreeKey.access(accessName, permissionName, groupName);
 
           String value = formatPermissionValue(rule, permissionName);
           result.put(fullKey, new Value(value, false));
         }
 
-        // add exclusive groups for later processing
+        // add exclusive permissions for later processing
         if (permission.getExclusiveGroup()) {
-          exclusiveGroups.put(key, new HashSet<>());
-
-          for (PermissionRule rule : permission.getRules()) {
-            exclusiveGroups.get(key).add(rule.getGroup().getName());
-          }
+          exclusivePermissions.computeIfAbsent(accessName, k -> new HashSet<>()).add(permissionName);
         }
       }
     }
 
-    // Process inherited permissions from parent
-    for (Map.Entry<String, Value> entry : parentProcessedPermissions.entrySet()) {
-      String key = entry.getKey();
-
-      String[] parts = key.split(" ", 3);
-      if (parts.length < 3) {
-        continue;
-      }
-
-      String accessName = parts[0];
-      String permissionName = parts[1];
-      String exclusiveKey = accessName + " " + permissionName;
-
-      boolean isOverridden = result.containsKey(key);
-      boolean isBlockedByExclusive = exclusiveGroups.containsKey(exclusiveKey);
-
-      // if they are overridden or blocked skip adding
-      if (!isOverridden && !isBlockedByExclusive) {
-        result.put(key, new Value(entry.getValue().value(), true));
+    // Inherit permissions from parent unless an exclusive permission blocks them, overridden ones come from result
+    return ValueMap.of(parentValues, result, key -> {
+      if (key.kind() != TreeKey.Kind.ACCESS) {
+        return false;
       }
-    }
-
-    return result;
+      Set<String> exclusive = exclusivePermissions.get(key.first());
+      return exclusive == null || !exclusive.contains(key.second());
+    });
   }
 
 
@@ -385,69 +629,138 @@ public class ProjectTree {
     return value.toString();
   }
 
-  Map<String, Value> getConfigInfo(ConfigInfo configInfo) throws IllegalStateException {
-    Map<String, Value> values = new HashMap<>();
-    values.put("use_contributor_agreements", parseInherited(configInfo.useContributorAgreements));
-    values.put("use_content_merge", parseInherited(configInfo.useContentMerge));
-    values.put("use_signed_off_by", parseInherited(configInfo.useSignedOffBy));
-    values.put("create_new_change_for_all_not_in_target", parseInherited(configInfo.createNewChangeForAllNotInTarget));
-    values.put("require_change_id", parseInherited(configInfo.requireChangeId));
-    values.put("enable_signed_push", parseInherited(configInfo.enableSignedPush));
-    values.put("require_signed_push", parseInherited(configInfo.requireSignedPush));
-    values.put("reject_implicit_merges", parseInherited(configInfo.rejectImplicitMerges));
-    values.put("private_by_default", parseInherited(configInfo.privateByDefault));
-    values.put("work_in_progress_by_default", parseInherited(configInfo.workInProgressByDefault));
-    values.put("enable_reviewer_by_email", parseInherited(configInfo.enableReviewerByEmail));
-    values.put("match_author_to_committer_date", parseInherited(configInfo.matchAuthorToCommitterDate));
-    values.put("reject_empty_commit", parseInherited(configInfo.rejectEmptyCommit));
-    values.put("skip_adding_author_and_committer_as_reviewers", parseInherited(configInfo.skipAddingAuthorAndCommitterAsReviewers));
-
-    ConfigInfo.SubmitTypeInfo defaultSubmitType = configInfo.defaultSubmitType;
-    if (defaultSubmitType.configuredValue == SubmitType.INHERIT) {
-      values.put("default_submit_type", new Value(defaultSubmitType.inheritedValue.name(), true));
+  Map<TreeKey, Value> getConfigValues(ProjectState state) {
+    Project project = state.getProject();
+    ProjectState parentState = parentOf(state);
+
+    Map<TreeKey, Value> values = new HashMap<>();
+    values.put(TreeKey.config("use_contributor_agreements"), parseInherited(project, parentState, BooleanProjectConfig.USE_CONTRIBUTOR_AGREEMENTS));
+    values.put(TreeKey.config("use_content_merge"), parseInherited(project, parentState, BooleanProjectConfig.USE_CONTENT_MERGE));
+    values.put(TreeKey.config("use_signed_off_by"), parseInherited(project, parentState, BooleanProjectConfig.USE_SIGNED_OFF_BY));
+    values.put(TreeKey.config("create_new_change_for_all_not_in_target"), parseInherited(project, parentState, BooleanProjectConfig.CREATE_NEW_CHANGE_FOR_ALL_NOT_IN_TARGET));
+    values.put(TreeKey.config("require_change_id"), parseInherited(project, parentState, BooleanProjectConfig.REQUIRE_CHANGE_ID));
+    values.put(TreeKey.config("enable_signed_push"), parseInherited(project, parentState, BooleanProjectConfig.ENABLE_SIGNED_PUSH));
+    values.put(TreeKey.config("require_signed_push"), parseInherited(project, parentState, BooleanProjectConfig.REQUIRE_SIGNED_PUSH));
+    values.put(TreeKey.config("reject_implicit_merges"), parseInherited(project, parentState, BooleanProjectConfig.REJECT_IMPLICIT_MERGES));
+    values.put(TreeKey.config("private_by_default"), parseInherited(project, parentState, BooleanProjectConfig.PRIVATE_BY_DEFAULT));
+    values.put(TreeKey.config("work_in_progress_by_default"), parseInherited(project, parentState, BooleanProjectConfig.WORK_IN_PROGRESS_BY_DEFAULT));
+    values.put(TreeKey.config("enable_reviewer_by_email"), parseInherited(project, parentState, BooleanProjectConfig.ENABLE_REVIEWER_BY_EMAIL));
+    values.put(TreeKey.config("match_author_to_committer_date"), parseInherited(project, parentState, BooleanProjectConfig.MATCH_AUTHOR_TO_COMMITTER_DATE));
+    values.put(TreeKey.config("reject_empty_commit"), parseInherited(project, parentState, BooleanProjectConfig.REJECT_EMPTY_COMMIT));
+    values.put(TreeKey.config("skip_adding_author_and_committer_as_reviewers"), parseInherited(project, parentState, BooleanProjectConfig.SKIP_ADDING_AUTHOR_AND_COMMITTER_AS_REVIEWERS));
+
+    SubmitType submitType = project.getSubmitType();
+    if (submitType == SubmitType.INHERIT) {
+      values.put(TreeKey.config("default_submit_type"), new Value(inheritedSubmitType(state).name(), true));
     } else {
-      values.put("default_submit_type", new Value(defaultSubmitType.configuredValue.name(), false));
+      values.put(TreeKey.config("default_submit_type"), new Value(submitType.name(), false));
     }
 
-    ConfigInfo.MaxObjectSizeLimitInfo maxObjectSizeLimit = configInfo.maxObjectSizeLimit;
-    if (maxObjectSizeLimit == null || maxObjectSizeLimit.value == null) {
-      values.put("max_object_size_limit", new Value("NOT_AVAILABLE", false));
+    // as in the config REST API, the limit is only available when one applies and the configured value is reported
+    if (state.getEffectiveMaxObjectSizeLimit().value == 0) {
+      values.put(TreeKey.config("max_object_size_limit"), new Value("NOT_AVAILABLE", false));
     } else {
-      values.put("max_object_size_limit", new Value(maxObjectSizeLimit.configuredValue, false));
+      values.put(TreeKey.config("max_object_size_limit"), new Value(project.getMaxObjectSizeLimit(), false));
     }
 
-    ProjectState state = configInfo.state;
-    if (state == null) {
-      values.put("state", new Value("NOT_AVAILABLE", false));
+    if (project.getState() == null) {
+      values.put(TreeKey.config("state"), new Value("NOT_AVAILABLE", false));
     } else {
-      values.put("state", new Value(state.name(), false));
+      values.put(TreeKey.config("state"), new Value(project.getState().name(), false));
     }
 
     return values;
   }
 
-  private Value parseInherited(ConfigInfo.InheritedBooleanInfo info) throws IllegalStateException {
-    if (info == null) {
+  // The project cache does not check permissions, projects the caller cannot see are not part of the tree
+  private boolean isVisible(String name) {
+    return permissionBackend.currentUser().project(Project.nameKey(name)).testOrFalse(ProjectPermission.ACCESS);
+  }
+
+  private static ProjectState parentOf(ProjectState state) {
+    return state.parents().first().orNull();
+  }
+
+  // Resolve the submit type of the closest ancestor that configures one
+  private SubmitType inheritedSubmitType(ProjectState state) {
+    for (ProjectState parentState : state.parents()) {
+      SubmitType submitType = parentState.getProject().getSubmitType();
+      if (submitType != null && submitType != SubmitType.INHERIT) {
+        return submitType;
+      }
+    }
+    return Project.DEFAULT_SUBMIT_TYPE;
+  }
+
+  private Value parseInherited(Project project, ProjectState parentState, BooleanProjectConfig config) {
+    InheritableBoolean configuredValue = project.getBooleanConfig(config);
+    if (configuredValue == null) {
       return new Value("NOT_AVAILABLE", false);
     }
-    try {
-      if (info.configuredValue == InheritableBoolean.INHERIT) {
-        return new Value(info.inheritedValue.toString().toUpperCase(), true);
-      } else {
-        return new Value(info.configuredValue.name(), false);
+    if (configuredValue == InheritableBoolean.INHERIT) {
+      if (parentState == null) {
+        return new Value("NOT_AVAILABLE", false);
       }
-    } catch (Exception e) {
-      return new Value("NOT_AVAILABLE", false);
+      return new Value(Boolean.toString(parentState.is(config)).toUpperCase(), true);
+    }
+    return new Value(configuredValue.name(), false);
+  }
+
+  private record FilledNode(Map<TreeKey, Value> values, ProjectTreeCache.Key key) {}
+
+  // Fills a node and then all of its subtrees concurrently in the pool, tasks are never serialized
+  @SuppressWarnings("serial")
+  private class FillTask extends RecursiveAction {
+    private final ProjectData node;
+    private final Map<TreeKey, Value> parentValues;
+    private final ProjectTreeCache.Key parentKey;
+    private final RequestContext context;
+    // trace spans of worker threads are recorded for the request that created the task
+    private final Runnable fill;
+
+    FillTask(
+        ProjectData node,
+        Map<TreeKey, Value> parentValues,
+        ProjectTreeCache.Key parentKey,
+        RequestContext context) {
+      this.node = node;
+      this.parentValues = parentValues;
+      this.parentKey = parentKey;
+      this.context = context;
+      this.fill = LoggingContext.copy(this::fillSubtree);
+    }
+
+    @Override
+    protected void compute() {
+      // worker threads act on behalf of the user of the request
+      RequestContext old = requestContext.setContext(context);
+      try {
+        fill.run();
+      } finally {
+        requestContext.setContext(old);
+      }
+    }
+
+    private void fillSubtree() {
+      FilledNode filled = fillNode(node, parentValues, parentKey);
+      invokeAll(node.children.stream()
+          .map(child -> new FillTask(child, filled.values(), filled.key(), context))
+          .toList());
     }
   }
 
   public static final class ProjectData implements Comparable<ProjectData> {
     public String name;
     public String parent;
-    public Map<String, Value> values;
+    @JsonAdapter(ValuesAdapter.class)
+    public Map<TreeKey, Value> values;
     public List<ProjectData> children;
+    // Number of children left out below the requested depth, null when all children are included
+    public Integer childCount;
+    // Inherited values the project does not have, only set in the compact encoding
+    public List<String> removed;
 
-    public ProjectData(String name, String parent, List<ProjectData> children, Map<String, Value> values) {
+    public ProjectData(String name, String parent, List<ProjectData> children, Map<TreeKey, Value> values) {
       this.name = name;
       this.parent = parent;
       this.values = values;
@@ -460,5 +773,9 @@ public class ProjectTree {
     }
   }
 
-  public record Value(String value, Boolean isInherited) {}
+  public record Value(String value, Boolean isInherited) {
+    Value asInherited() {
+      return Boolean.TRUE.equals(isInherited) ? this : new Value(value, true);
+    }
+  }
 }
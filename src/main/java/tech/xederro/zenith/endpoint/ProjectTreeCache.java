@@ -0,0 +1,114 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.ProjectDeletedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Named;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+// Cache of values computed for tree nodes, keyed by the refs/meta/config revisions of the node and its ancestors
+@Singleton
+public class ProjectTreeCache implements GitReferenceUpdatedListener, ProjectDeletedListener {
+  static final String CACHE_NAME = "project_tree";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, Key.class, new TypeLiteral<Map<TreeKey, ProjectTree.Value>>() {})
+            .maximumWeight(4 << 20)
+            .weigher(ValuesWeigher.class);
+        DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(ProjectTreeCache.class);
+        DynamicSet.bind(binder(), ProjectDeletedListener.class).to(ProjectTreeCache.class);
+      }
+    };
+  }
+
+  private final Cache<Key, Map<TreeKey, ProjectTree.Value>> cache;
+
+  @Inject
+  ProjectTreeCache(@Named(CACHE_NAME) Cache<Key, Map<TreeKey, ProjectTree.Value>> cache) {
+    this.cache = cache;
+  }
+
+  Map<TreeKey, ProjectTree.Value> get(Key key, Callable<Map<TreeKey, ProjectTree.Value>> loader)
+      throws ExecutionException {
+    return cache.get(key, loader);
+  }
+
+  @Override
+  public void onGitReferenceUpdated(GitReferenceUpdatedListener.Event event) {
+    if (RefNames.REFS_CONFIG.equals(event.getRefName())) {
+      invalidate(event.getProjectName());
+    }
+  }
+
+  @Override
+  public void onProjectDeleted(ProjectDeletedListener.Event event) {
+    invalidate(event.getProjectName());
+  }
+
+  // Drop every entry computed for the project or for any of its descendants
+  void invalidate(String projectName) {
+    cache.asMap().keySet().removeIf(key -> key.projects().contains(projectName));
+  }
+
+  // The leading hidden projects are ancestors the caller cannot see, their configs still decide inherited config values
+  public record Key(
+      ValueFilter filter, ImmutableList<String> projects, ImmutableList<ObjectId> revisions, int hidden) {
+    // Key above the roots of the tree, never cached itself
+    static Key root(ValueFilter filter) {
+      return root(filter, ImmutableList.of(), ImmutableList.of());
+    }
+
+    static Key root(ValueFilter filter, ImmutableList<String> hiddenProjects, ImmutableList<ObjectId> hiddenRevisions) {
+      return new Key(filter, hiddenProjects, hiddenRevisions, hiddenProjects.size());
+    }
+
+    static Key child(Key parent, String project, ObjectId revision) {
+      return new Key(
+          parent.filter,
+          ImmutableList.<String>builder().addAll(parent.projects).add(project).build(),
+          ImmutableList.<ObjectId>builder().addAll(parent.revisions).add(revision).build(),
+          parent.hidden);
+    }
+  }
+
+  static class ValuesWeigher implements Weigher<Key, Map<TreeKey, ProjectTree.Value>> {
+    @Override
+    public int weigh(Key key, Map<TreeKey, ProjectTree.Value> values) {
+      // layered values count the parent layers they retain as well
+      return 1 + (values instanceof ValueMap layered ? layered.weight() : values.size());
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import tech.xederro.zenith.ZenithConfig;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+// Owns the pool used to compute subtrees of the project tree in parallel
+@Singleton
+public class ProjectTreeExecutor implements LifecycleListener {
+  private final int parallelism;
+  private volatile ForkJoinPool pool;
+
+  @Inject
+  ProjectTreeExecutor(ZenithConfig config) {
+    this(config.getTreeParallelism());
+  }
+
+  ProjectTreeExecutor(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  // Empty when the tree should be evaluated on the request thread
+  Optional<ForkJoinPool> pool() {
+    return Optional.ofNullable(pool);
+  }
+
+  @Override
+  public void start() {
+    if (parallelism > 1) {
+      pool = new ForkJoinPool(parallelism, p -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        thread.setName("Zenith-Tree-" + thread.getPoolIndex());
+        return thread;
+      }, null, false);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (pool != null) {
+      pool.shutdownNow();
+      pool = null;
+    }
+  }
+}
@@ -17,19 +17,44 @@
 
 package tech.xederro.zenith.endpoint;
 
+import com.google.common.io.CountingOutputStream;
 import com.google.gerrit.extensions.restapi.*;
 import com.google.gerrit.server.config.ConfigResource;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Inject;
 import org.kohsuke.args4j.Option;
+import tech.xederro.zenith.ZenithMetrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class ProjectTreeRest implements RestReadView<ConfigResource> {
+  // Prefix Gerrit puts in front of every JSON response to prevent XSSI
+  private static final String JSON_MAGIC = ")]}'\n";
+
   private final ProjectTree projectTree;
+  private final ZenithMetrics metrics;
 
   private String query;
+  private String root;
+  private int depth = Integer.MAX_VALUE;
+  private boolean stream;
+  private boolean compact;
+  private final List<String> keys = new ArrayList<>();
+  private final List<String> keyPrefixes = new ArrayList<>();
 
   @Inject
-  ProjectTreeRest(ProjectTree projectTree) {
+  ProjectTreeRest(ProjectTree projectTree, ZenithMetrics metrics) {
     this.projectTree = projectTree;
+    this.metrics = metrics;
   }
 
   @Option(name = "--query", metaVar = "QUERY")
@@ -37,8 +62,106 @@ public class ProjectTreeRest implements RestReadView<ConfigResource> {
     this.query = arg;
   }
 
+  @Option(name = "--root", metaVar = "PROJECT", usage = "return the subtree below the project instead of a query result")
+  private void root(String arg) {
+    this.root = arg;
+  }
+
+  @Option(name = "--depth", metaVar = "DEPTH", usage = "number of levels to return, deeper projects are only counted")
+  private void depth(int arg) {
+    this.depth = arg;
+  }
+
+  @Option(name = "--stream", usage = "write every project as soon as its values are computed")
+  private void stream(boolean arg) {
+    this.stream = arg;
+  }
+
+  @Option(name = "--compact", usage = "only return the values a project does not inherit unchanged from its parent")
+  private void compact(boolean arg) {
+    this.compact = arg;
+  }
+
+  @Option(name = "--key", metaVar = "KEY", usage = "only compute the given value, can be repeated")
+  private void key(String arg) {
+    this.keys.add(arg);
+  }
+
+  @Option(name = "--key-prefix", metaVar = "PREFIX", usage = "only compute values starting with the prefix, can be repeated")
+  private void keyPrefix(String arg) {
+    this.keyPrefixes.add(arg);
+  }
+
   @Override
-  public Response<ProjectTree.ProjectData> apply(ConfigResource resource) throws AuthException, BadRequestException, ResourceConflictException, Exception {
-    return Response.ok(projectTree.treeFromQuery(query));
+  public Response<?> apply(ConfigResource resource) throws AuthException, BadRequestException, ResourceConflictException, Exception {
+    if (depth < 0) {
+      throw new BadRequestException("depth must not be negative");
+    }
+    ValueFilter filter = ValueFilter.of(keys, keyPrefixes);
+    boolean streamed = false;
+    try {
+      List<ProjectTree.ProjectData> roots = root != null
+          ? projectTree.rootsFromProject(root, depth)
+          : projectTree.rootsFromQuery(query, depth);
+      metrics.treeResponse(countNodes(roots));
+      if (stream) {
+        streamed = true;
+        return Response.ok(streamTree(roots, filter));
+      }
+      ProjectTree.ProjectData tree = projectTree.fillTree(roots, filter);
+      if (compact) {
+        projectTree.compactTree(tree, Map.of());
+      }
+      return Response.ok(tree);
+    } finally {
+      // a streamed request ends once its response is written
+      if (!streamed) {
+        projectTree.finish(describe());
+      }
+    }
+  }
+
+  // Parameters of the request for the slow request log
+  private String describe() {
+    StringBuilder request = new StringBuilder(root != null ? "root=" + root : "query=" + query);
+    if (depth != Integer.MAX_VALUE) {
+      request.append(" depth=").append(depth);
+    }
+    if (stream) {
+      request.append(" stream");
+    }
+    if (compact) {
+      request.append(" compact");
+    }
+    keys.forEach(key -> request.append(" key=").append(key));
+    keyPrefixes.forEach(prefix -> request.append(" key-prefix=").append(prefix));
+    return request.toString();
+  }
+
+  private static int countNodes(List<ProjectTree.ProjectData> nodes) {
+    int count = nodes.size();
+    for (ProjectTree.ProjectData node : nodes) {
+      count += countNodes(node.children);
+    }
+    return count;
+  }
+
+  private BinaryResult streamTree(List<ProjectTree.ProjectData> roots, ValueFilter filter) {
+    return new BinaryResult() {
+      @Override
+      public void writeTo(OutputStream os) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(os);
+        try {
+          Writer out = new BufferedWriter(new OutputStreamWriter(counted, UTF_8));
+          out.write(JSON_MAGIC);
+          JsonWriter writer = new JsonWriter(out);
+          projectTree.writeTree(roots, filter, compact, writer);
+          writer.flush();
+          metrics.treeStreamed(counted.getCount());
+        } finally {
+          projectTree.finish(describe());
+        }
+      }
+    }.setContentType("application/json").setCharacterEncoding(UTF_8);
   }
 }
@@ -0,0 +1,184 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Objects;
+
+// Key of a value of the tree, interned so the same key is shared by every project defining or inheriting it
+public final class TreeKey implements Comparable<TreeKey> {
+  private static final Interner<TreeKey> INTERNER = Interners.newWeakInterner();
+
+  public static final TreeKey PARENT = config("parent");
+
+  public enum Kind {
+    CONFIG(""),
+    ACCESS(""),
+    LABEL(ValueFilter.LABEL_PREFIX),
+    PLUGIN(ValueFilter.PLUGIN_PREFIX),
+    EXTENSION_PANEL(ValueFilter.EXTENSION_PANEL_PREFIX);
+
+    private final String prefix;
+
+    Kind(String prefix) {
+      this.prefix = prefix;
+    }
+  }
+
+  private final Kind kind;
+  private final String first;
+  private final String second;
+  private final String third;
+  private final int hash;
+  private String text;
+
+  private TreeKey(Kind kind, String first, String second, String third) {
+    this.kind = kind;
+    this.first = first;
+    this.second = second;
+    this.third = third;
+    this.hash = Objects.hash(kind, first, second, third);
+  }
+
+  private static TreeKey of(Kind kind, String first, String second, String third) {
+    return INTERNER.intern(new TreeKey(kind, first, second, third));
+  }
+
+  public static TreeKey config(String name) {
+    return of(Kind.CONFIG, name, null, null);
+  }
+
+  public static TreeKey access(String section, String permission, String group) {
+    return of(Kind.ACCESS, section, permission, group);
+  }
+
+  public static TreeKey label(String label, String refPattern, String attribute) {
+    return of(Kind.LABEL, label, refPattern, attribute);
+  }
+
+  public static TreeKey plugin(String plugin, String key) {
+    return of(Kind.PLUGIN, plugin, key, null);
+  }
+
+  public static TreeKey extensionPanel(String panel) {
+    return of(Kind.EXTENSION_PANEL, panel, null, null);
+  }
+
+  // Reverse of toString, keys coming from requests and older clients
+  public static TreeKey parse(String key) {
+    if (key.startsWith(ValueFilter.LABEL_PREFIX)) {
+      String[] parts = key.substring(ValueFilter.LABEL_PREFIX.length()).split(" ", 3);
+      return label(parts[0], part(parts, 1), part(parts, 2));
+    }
+    if (key.startsWith(ValueFilter.PLUGIN_PREFIX)) {
+      String[] parts = key.substring(ValueFilter.PLUGIN_PREFIX.length()).split(" ", 2);
+      return plugin(parts[0], part(parts, 1));
+    }
+    if (key.startsWith(ValueFilter.EXTENSION_PANEL_PREFIX)) {
+      return extensionPanel(key.substring(ValueFilter.EXTENSION_PANEL_PREFIX.length()));
+    }
+    String[] parts = key.split(" ", 3);
+    if (parts.length == 3) {
+      return access(parts[0], parts[1], parts[2]);
+    }
+    return config(key);
+  }
+
+  private static String part(String[] parts, int index) {
+    return index < parts.length ? parts[index] : null;
+  }
+
+  public Kind kind() {
+    return kind;
+  }
+
+  // Section of an access key, plugin or label name otherwise
+  public String first() {
+    return first;
+  }
+
+  // Permission of an access key, ref pattern of a label key, key of a plugin config
+  public String second() {
+    return second;
+  }
+
+  // Group of an access key, attribute of a label key
+  public String third() {
+    return third;
+  }
+
+  // Whether children inherit the value unless they override or block it
+  public boolean isInheritable() {
+    return switch (kind) {
+      case ACCESS, LABEL -> true;
+      case PLUGIN -> second != null;
+      case CONFIG, EXTENSION_PANEL -> false;
+    };
+  }
+
+  // Whether both keys belong to the same permission of the same access section
+  public boolean samePermission(TreeKey other) {
+    return kind == Kind.ACCESS && other.kind == Kind.ACCESS
+        && first.equals(other.first) && second.equals(other.second);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TreeKey other)) {
+      return false;
+    }
+    return hash == other.hash
+        && kind == other.kind
+        && Objects.equals(first, other.first)
+        && Objects.equals(second, other.second)
+        && Objects.equals(third, other.third);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public int compareTo(TreeKey o) {
+    return toString().compareTo(o.toString());
+  }
+
+  // String form used in responses, only built once per key
+  @Override
+  public String toString() {
+    String result = text;
+    if (result == null) {
+      StringBuilder builder = new StringBuilder(kind.prefix).append(first);
+      if (second != null) {
+        builder.append(' ').append(second);
+      }
+      if (third != null) {
+        builder.append(' ').append(third);
+      }
+      result = builder.toString();
+      text = result;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.metrics.Timer1;
+import com.google.gerrit.server.logging.Metadata;
+import com.google.gerrit.server.logging.TraceContext;
+import com.google.gerrit.server.logging.TraceContext.TraceTimer;
+import com.google.inject.Inject;
+import tech.xederro.zenith.ZenithConfig;
+import tech.xederro.zenith.ZenithMetrics;
+import tech.xederro.zenith.ZenithMetrics.NodeResult;
+import tech.xederro.zenith.ZenithMetrics.TreePhase;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// Instrumentation of a single tree request: phases and project loads are recorded as metrics and trace spans,
+// which end up in the performance log, and summed up to log a breakdown of requests slower than the threshold
+final class TreeTrace {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final ZenithMetrics metrics;
+  private final long slowThresholdMillis;
+  private final long start = System.nanoTime();
+  private final Map<TreePhase, LongAdder> phaseNanos = new EnumMap<>(TreePhase.class);
+  private final Map<NodeResult, LongAdder> nodes = new EnumMap<>(NodeResult.class);
+  // project loads may run on several threads at once, their stages add up to more than the wall time
+  private final Map<TreeKey.Kind, LongAdder> stageNanos = new EnumMap<>(TreeKey.Kind.class);
+
+  @Inject
+  TreeTrace(ZenithMetrics metrics, ZenithConfig config) {
+    this(metrics, config.getSlowTreeRequestThreshold());
+  }
+
+  TreeTrace(ZenithMetrics metrics, long slowThresholdMillis) {
+    this.metrics = metrics;
+    this.slowThresholdMillis = slowThresholdMillis;
+    for (TreePhase phase : TreePhase.values()) {
+      phaseNanos.put(phase, new LongAdder());
+    }
+    for (NodeResult result : NodeResult.values()) {
+      nodes.put(result, new LongAdder());
+    }
+    for (TreeKey.Kind kind : TreeKey.Kind.values()) {
+      stageNanos.put(kind, new LongAdder());
+    }
+  }
+
+  Span phase(TreePhase phase) {
+    Timer1.Context<TreePhase> timer = metrics.startTree(phase);
+    TraceTimer span = TraceContext.newTimer("Zenith tree " + phase.name().toLowerCase(Locale.ROOT));
+    long phaseStart = System.nanoTime();
+    return () -> {
+      phaseNanos.get(phase).add(System.nanoTime() - phaseStart);
+      span.close();
+      timer.close();
+    };
+  }
+
+  // Span of computing the values of a project missing in the cache
+  Span loadProject(String name) {
+    TraceTimer span = TraceContext.newTimer(
+        "Zenith tree load project", Metadata.builder().projectName(name).build());
+    return span::close;
+  }
+
+  // Start of a stage of a project load, the time until now is added to the stage
+  long stage(TreeKey.Kind kind, long stageStart) {
+    long now = System.nanoTime();
+    stageNanos.get(kind).add(now - stageStart);
+    return now;
+  }
+
+  void node(NodeResult result) {
+    nodes.get(result).increment();
+    metrics.treeNode(result);
+  }
+
+  void computedKeys(int keys) {
+    metrics.treeComputedKeys(keys);
+  }
+
+  // Logs the breakdown of the request when it took longer than the threshold
+  void finish(String request) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    if (slowThresholdMillis <= 0 || millis < slowThresholdMillis) {
+      return;
+    }
+    logger.atWarning().log("Slow tree request %s took %d ms; %s", request, millis, breakdown());
+  }
+
+  String breakdown() {
+    return String.format(
+        "phases: %s; nodes: %s; project loads: %s", format(phaseNanos), counts(), format(stageNanos));
+  }
+
+  private String counts() {
+    return nodes.entrySet().stream()
+        .map(e -> e.getKey().name().toLowerCase(Locale.ROOT) + " " + e.getValue().sum())
+        .collect(Collectors.joining(", "));
+  }
+
+  // Durations of the steps that ran
+  private static String format(Map<? extends Enum<?>, LongAdder> nanos) {
+    return nanos.entrySet().stream()
+        .filter(e -> e.getValue().sum() > 0)
+        .map(e -> e.getKey().name().toLowerCase(Locale.ROOT) + " "
+            + TimeUnit.NANOSECONDS.toMillis(e.getValue().sum()) + " ms")
+        .collect(Collectors.joining(", "));
+  }
+
+  interface Span extends AutoCloseable {
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.Collection;
+
+// Projection of the values computed for every project of the tree, empty sets select every value
+public record ValueFilter(ImmutableSortedSet<String> keys, ImmutableSortedSet<String> prefixes) {
+  public static final ValueFilter ALL = new ValueFilter(ImmutableSortedSet.of(), ImmutableSortedSet.of());
+
+  static final String LABEL_PREFIX = "label ";
+  static final String PLUGIN_PREFIX = "plugin ";
+  static final String EXTENSION_PANEL_PREFIX = "extension_panel ";
+
+  public static ValueFilter of(Collection<String> keys, Collection<String> prefixes) {
+    if (keys.isEmpty() && prefixes.isEmpty()) {
+      return ALL;
+    }
+    return new ValueFilter(ImmutableSortedSet.copyOf(keys), ImmutableSortedSet.copyOf(prefixes));
+  }
+
+  public boolean isAll() {
+    return keys.isEmpty() && prefixes.isEmpty();
+  }
+
+  public boolean matches(String key) {
+    return isAll() || keys.contains(key) || prefixes.stream().anyMatch(key::startsWith);
+  }
+
+  // Whether any key starting with the given prefix can be selected
+  boolean mayMatchPrefix(String prefix) {
+    return isAll()
+        || keys.stream().anyMatch(key -> key.startsWith(prefix))
+        || prefixes.stream().anyMatch(p -> p.startsWith(prefix) || prefix.startsWith(p));
+  }
+
+  // Whether any access section key can be selected, those are the only keys without a fixed prefix
+  boolean mayMatchAccess() {
+    return isAll()
+        || keys.stream().anyMatch(key -> !hasStagePrefix(key) && key.split(" ").length >= 3)
+        || prefixes.stream().anyMatch(p -> !hasStagePrefix(p));
+  }
+
+  private static boolean hasStagePrefix(String key) {
+    return key.startsWith(LABEL_PREFIX) || key.startsWith(PLUGIN_PREFIX) || key.startsWith(EXTENSION_PANEL_PREFIX);
+  }
+}
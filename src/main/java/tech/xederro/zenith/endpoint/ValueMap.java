@@ -0,0 +1,148 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// Immutable values of a project layered over the values of its parent, inherited values are shared instead of copied
+public final class ValueMap extends AbstractMap<TreeKey, ProjectTree.Value> {
+  // Longest chain of layers before the values are copied into a single layer to keep lookups cheap
+  static final int MAX_DEPTH = 8;
+
+  private final Map<TreeKey, ProjectTree.Value> parent;
+  private final ImmutableMap<TreeKey, ProjectTree.Value> own;
+  private final Predicate<TreeKey> inherits;
+  private final int depth;
+  private final int weight;
+  private int size = -1;
+
+  private ValueMap(
+      Map<TreeKey, ProjectTree.Value> parent,
+      ImmutableMap<TreeKey, ProjectTree.Value> own,
+      Predicate<TreeKey> inherits,
+      int depth) {
+    this.parent = parent;
+    this.own = own;
+    this.inherits = inherits;
+    this.depth = depth;
+    // an entry keeps its parent layers reachable even after their own entries were evicted
+    int parentWeight = parent instanceof ValueMap values ? values.weight : parent != null ? parent.size() : 0;
+    this.weight = own.size() + parentWeight;
+  }
+
+  // Values of a project that has no parent values to inherit
+  static ValueMap of(Map<TreeKey, ProjectTree.Value> own) {
+    return new ValueMap(null, ImmutableMap.copyOf(own), key -> false, 0);
+  }
+
+  // Own values over the parent values accepted by inherits, which are reported as inherited
+  static ValueMap of(
+      Map<TreeKey, ProjectTree.Value> parent,
+      Map<TreeKey, ProjectTree.Value> own,
+      Predicate<TreeKey> inherits) {
+    if (parent == null || parent.isEmpty()) {
+      return of(own);
+    }
+    int depth = parent instanceof ValueMap values ? values.depth + 1 : 1;
+    ValueMap layered = new ValueMap(parent, ImmutableMap.copyOf(own), inherits, depth);
+    if (depth > MAX_DEPTH) {
+      return of(layered);
+    }
+    return layered;
+  }
+
+  // Values defined by the project itself
+  ImmutableMap<TreeKey, ProjectTree.Value> own() {
+    return own;
+  }
+
+  // Whether the project would inherit the value of the parent with the key, unless it defines its own
+  boolean inherits(TreeKey key) {
+    return inherits.test(key);
+  }
+
+  // Number of entries stored by this layer and the parent layers it retains, used to weigh cache entries.
+  // Layers shared by several entries are counted for each of them, at most MAX_DEPTH times.
+  int weight() {
+    return weight;
+  }
+
+  @Override
+  public ProjectTree.Value get(Object key) {
+    ProjectTree.Value value = own.get(key);
+    if (value != null || parent == null || !(key instanceof TreeKey treeKey) || !inherits.test(treeKey)) {
+      return value;
+    }
+    ProjectTree.Value inherited = parent.get(treeKey);
+    return inherited != null ? inherited.asInherited() : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    int result = size;
+    if (result < 0) {
+      result = Iterators.size(entryIterator());
+      size = result;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return own.isEmpty() && !inheritedIterator().hasNext();
+  }
+
+  @Override
+  public Set<Entry<TreeKey, ProjectTree.Value>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<TreeKey, ProjectTree.Value>> iterator() {
+        return entryIterator();
+      }
+
+      @Override
+      public int size() {
+        return ValueMap.this.size();
+      }
+    };
+  }
+
+  private Iterator<Entry<TreeKey, ProjectTree.Value>> entryIterator() {
+    return Iterators.concat(own.entrySet().iterator(), inheritedIterator());
+  }
+
+  private Iterator<Entry<TreeKey, ProjectTree.Value>> inheritedIterator() {
+    if (parent == null) {
+      return Collections.emptyIterator();
+    }
+    Iterator<Entry<TreeKey, ProjectTree.Value>> inherited = Iterators.filter(
+        parent.entrySet().iterator(),
+        entry -> inherits.test(entry.getKey()) && !own.containsKey(entry.getKey()));
+    return Iterators.transform(
+        inherited, entry -> new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().asInherited()));
+  }
+}
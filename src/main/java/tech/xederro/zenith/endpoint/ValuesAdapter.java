@@ -0,0 +1,79 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// JSON form of the values of a project, shared by the streamed and the buffered responses.
+// Inheritable values are flagged, so clients expanding compact values do not need to know the key kinds.
+public class ValuesAdapter extends TypeAdapter<Map<TreeKey, ProjectTree.Value>> {
+  @Override
+  public void write(JsonWriter writer, Map<TreeKey, ProjectTree.Value> values) throws IOException {
+    if (values == null) {
+      writer.nullValue();
+      return;
+    }
+    writer.beginObject();
+    for (Map.Entry<TreeKey, ProjectTree.Value> entry : values.entrySet()) {
+      writer.name(entry.getKey().toString()).beginObject();
+      if (entry.getValue().value() != null) {
+        writer.name("value").value(entry.getValue().value());
+      }
+      writer.name("is_inherited").value(entry.getValue().isInherited());
+      if (entry.getKey().isInheritable()) {
+        writer.name("inheritable").value(true);
+      }
+      writer.endObject();
+    }
+    writer.endObject();
+  }
+
+  @Override
+  public Map<TreeKey, ProjectTree.Value> read(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    Map<TreeKey, ProjectTree.Value> values = new HashMap<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      TreeKey key = TreeKey.parse(reader.nextName());
+      String value = null;
+      Boolean isInherited = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "value" -> value = reader.nextString();
+          case "is_inherited" -> isInherited = reader.nextBoolean();
+          default -> reader.skipValue(); // derived from the key
+        }
+      }
+      reader.endObject();
+      values.put(key, new ProjectTree.Value(value, isInherited));
+    }
+    reader.endObject();
+    return values;
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.command;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.google.gson.Gson;
+import com.google.gerrit.sshd.BaseCommand;
+import com.google.gerrit.sshd.SshCommand;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ApplyTemplateCommandBulkTest {
+  private FileRepoHelper fileRepoHelper;
+  private FileRepoHelper.RenderedTemplate rendered;
+  private ApplyTemplateCommand command;
+  private ByteArrayOutputStream stdoutStream;
+  private ByteArrayOutputStream stderrStream;
+
+  @Before
+  public void setUp() throws Exception {
+    fileRepoHelper = mock(FileRepoHelper.class);
+    rendered = mock(FileRepoHelper.RenderedTemplate.class);
+    when(fileRepoHelper.render(any(), any())).thenReturn(rendered);
+
+    command = new ApplyTemplateCommand(fileRepoHelper, new Gson());
+    command.setTargets("template@master:main");
+    command.setJson("{\"team\": \"qa\"}");
+
+    stdoutStream = new ByteArrayOutputStream();
+    stderrStream = new ByteArrayOutputStream();
+    setField(SshCommand.class, "stdout", new PrintWriter(stdoutStream, true));
+    setField(SshCommand.class, "stderr", new PrintWriter(stderrStream, true));
+  }
+
+  @Test
+  public void testQuery_rendersOnceAndAppliesToEveryProject() throws Exception {
+    when(fileRepoHelper.queryProjects("parent:base")).thenReturn(List.of("a", "b", "c"));
+    when(fileRepoHelper.apply(eq("a"), any(), anyBoolean())).thenReturn(true);
+    when(fileRepoHelper.apply(eq("c"), any(), anyBoolean())).thenThrow(new IOException("locked"));
+    command.query = "parent:base";
+    command.threads = 2;
+
+    command.run();
+
+    verify(fileRepoHelper, times(1)).render(
+        new FileRepoHelper.TemplateTarget("template", "refs/heads/master", "refs/heads/main"), Map.of("team", "qa"));
+    verify(fileRepoHelper).apply("a", List.of(rendered), false);
+    verify(fileRepoHelper).apply("b", List.of(rendered), false);
+    verify(fileRepoHelper).apply("c", List.of(rendered), false);
+    verify(rendered).close();
+    String stdout = stdoutStream.toString();
+    assertTrue(stdout, stdout.contains("a: updated"));
+    assertTrue(stdout, stdout.contains("b: up to date"));
+    assertTrue(stdout, stdout.contains("c: failed: locked"));
+    assertTrue(stdout, stdout.contains("Applied template to 3 projects: 1 updated, 1 up to date, 1 failed"));
+  }
+
+  @Test
+  public void testStdin_rendersOncePerDistinctJson() throws Exception {
+    setField(BaseCommand.class, "in", new ByteArrayInputStream((
+        "# rollout\n"
+            + "a\n"
+            + "b {\"team\": \"dev\"}\n"
+            + "\n"
+            + "c {\"team\":\"dev\"}\n"
+            + "a {\"team\": \"ops\"}\n").getBytes(StandardCharsets.UTF_8)));
+    command.stdin = true;
+
+    command.run();
+
+    verify(fileRepoHelper, times(1)).render(any(), eq(Map.of("team", "qa")));
+    verify(fileRepoHelper, times(1)).render(any(), eq(Map.of("team", "dev")));
+    verify(fileRepoHelper, never()).render(any(), eq(Map.of("team", "ops")));
+    verify(fileRepoHelper, times(3)).apply(any(), any(), anyBoolean());
+    verify(rendered, times(2)).close();
+    assertTrue(stdoutStream.toString().contains("Applied template to 3 projects"));
+  }
+
+  @Test
+  public void testDryRun_previewsWithoutApplying() throws Exception {
+    when(fileRepoHelper.queryProjects("parent:base")).thenReturn(List.of("a", "b"));
+    when(fileRepoHelper.preview(eq("a"), any(), anyBoolean(), anyBoolean())).thenReturn(List.of(
+        new FileRepoHelper.PreviewChange("refs/heads/main", DiffEntry.ChangeType.ADD, "ci.yaml", null)));
+    command.query = "parent:base";
+    command.dryRun = true;
+
+    command.run();
+
+    verify(fileRepoHelper, never()).apply(any(), any(), anyBoolean());
+    String stdout = stdoutStream.toString();
+    assertTrue(stdout, stdout.contains("a: 1 files would change\nA refs/heads/main ci.yaml\n"));
+    assertTrue(stdout, stdout.contains("b: up to date"));
+    assertTrue(stdout, stdout.contains("Previewed template on 2 projects: 1 would be updated, 1 up to date, 0 failed"));
+  }
+
+  @Test
+  public void testBulk_requiresTemplateTargets() throws Exception {
+    command.targets = null;
+    command.query = "parent:base";
+
+    command.run();
+
+    verifyNoInteractions(fileRepoHelper);
+    assertTrue(stderrStream.toString().contains("--template-targets is required"));
+  }
+
+  @Test
+  public void testBulk_rejectsTooManyThreads() throws Exception {
+    command.query = "parent:base";
+    command.threads = 1000;
+
+    command.run();
+
+    verifyNoInteractions(fileRepoHelper);
+    assertTrue(stderrStream.toString().contains("--threads must be between 1 and 8"));
+  }
+
+  private void setField(Class<?> owner, String fieldName, Object value) throws Exception {
+    Field field = owner.getDeclaredField(fieldName);
+    field.setAccessible(true);
+    field.set(command, value);
+  }
+}
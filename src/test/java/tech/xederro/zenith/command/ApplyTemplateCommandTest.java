@@ -52,10 +52,11 @@ public class ApplyTemplateCommandTest {
   @Parameter(2) public String targets;
   @Parameter(3) public String jsonInput;
   @Parameter(4) public Exception mockException;
-  @Parameter(5) public int expectedCreateCommitCalls;
+  @Parameter(5) public int expectedCreateCommitsCalls;
   @Parameter(6) public List<String> expectedTargetsList;
   @Parameter(7) public String expectedStdoutContains;
   @Parameter(8) public String expectedStderrContains;
+  @Parameter(9) public boolean projectChanged;
 
   @Parameters(name = "{index}: {0}")
   public static Collection<Object[]> data() {
@@ -84,30 +85,33 @@ public class ApplyTemplateCommandTest {
           1,
           List.of("TEMPLATE@master:master"),
           "Applied template to test-project",
-          null
+          null,
+          true
         },{
           "Multiple targets with JSON data",
           "test-project",
           "TEMPLATE@master:master,TEMPLATE@config:refs/meta/config",
           gson.toJson(simpleJson),
           null,
-          2,
+          1,
           Arrays.asList("TEMPLATE@master:master", "TEMPLATE@config:refs/meta/config"),
           "Applied template to test-project",
-          null
+          null,
+          true
         },{
           "Targets with surrounding whitespace",
           "test-project",
           "TEMPLATE@master:master, TEMPLATE@config:refs/meta/config , TEMPLATE@other:refs/meta/config",
           null,
           null,
-          3,
+          1,
           Arrays.asList(
             "TEMPLATE@master:master",
             "TEMPLATE@config:refs/meta/config",
             "TEMPLATE@other:refs/meta/config"),
           "Applied template to test-project",
-          null
+          null,
+          true
         },{
           "No targets specified (null)",
           "test-project",
@@ -117,7 +121,8 @@ public class ApplyTemplateCommandTest {
           0,
           null,
           "Applied template to test-project",
-          null
+          null,
+          true
         },{
           "Complex JSON object with nested structures",
           "test-project",
@@ -127,7 +132,8 @@ public class ApplyTemplateCommandTest {
           1,
           List.of("refs/heads/main:config.json"),
           "Applied template to test-project",
-          null
+          null,
+          true
         },{
           "Exception thrown by FileRepoHelper",
           "test-project",
@@ -137,7 +143,8 @@ public class ApplyTemplateCommandTest {
           1,
           null,
           null,
-          "error: Repository not found"
+          "error: Repository not found",
+          true
         },{
           "Empty string as targets input",
           "test-project",
@@ -147,7 +154,8 @@ public class ApplyTemplateCommandTest {
           1,
           List.of(""),
           "Applied template to test-project",
-          null
+          null,
+          true
         },{
           "Special characters in project name",
           "test/project-name_123",
@@ -157,7 +165,8 @@ public class ApplyTemplateCommandTest {
           1,
           List.of("TEMPLATE@other:refs/meta/config"),
           "Applied template to test/project-name_123",
-          null
+          null,
+          true
         },{
           "JSON array input",
           "test-project",
@@ -167,7 +176,8 @@ public class ApplyTemplateCommandTest {
           1,
           List.of("TEMPLATE@other:refs/meta/config"),
           "Applied template to test-project",
-          null
+          null,
+          true
         },{
           "Deeply nested JSON structure",
           "test-project",
@@ -177,7 +187,19 @@ public class ApplyTemplateCommandTest {
           1,
           List.of("refs/heads/main:config.yaml"),
           "Applied template to test-project",
-          null
+          null,
+          true
+        },{
+          "Project already up to date",
+          "test-project",
+          "TEMPLATE@master:master",
+          null,
+          null,
+          1,
+          List.of("TEMPLATE@master:master"),
+          "Project test-project is already up to date",
+          null,
+          false
         }
       });
   }
@@ -208,25 +230,28 @@ public class ApplyTemplateCommandTest {
       command.setJson(jsonInput);
     }
     if (mockException != null) {
-      doThrow(mockException).when(fileRepoHelper).createCommit(any(), any(), any(), anyBoolean());
+      doThrow(mockException).when(fileRepoHelper).createCommits(any(), any(), any(), anyBoolean());
+    } else {
+      when(fileRepoHelper.createCommits(any(), any(), any(), anyBoolean())).thenReturn(projectChanged);
     }
 
     // When
     command.run();
 
     // Then
-    verify(fileRepoHelper, times(expectedCreateCommitCalls)).createCommit(any(), any(), any(), anyBoolean());
+    verify(fileRepoHelper, times(expectedCreateCommitsCalls)).createCommits(any(), any(), any(), anyBoolean());
     if (expectedTargetsList != null) {
-      for (String expectedTarget : expectedTargetsList) {
-        verify(fileRepoHelper, atLeastOnce())
-            .createCommit(eq(projectName), eq(expectedTarget), any(), anyBoolean());
-      }
+      // All targets of a project are applied together
+      verify(fileRepoHelper).createCommits(eq(projectName), eq(expectedTargetsList), any(), anyBoolean());
     }
     if (expectedStdoutContains != null) {
       assertTrue(
           "Expected stdout to contain: " + expectedStdoutContains,
           stdoutStream.toString().contains(expectedStdoutContains));
     }
+    if (!projectChanged) {
+      assertFalse(stdoutStream.toString().contains("Applied template"));
+    }
     if (expectedStderrContains != null) {
       assertTrue(
           "Expected stderr to contain: " + expectedStderrContains,
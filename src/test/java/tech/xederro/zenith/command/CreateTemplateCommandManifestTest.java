@@ -0,0 +1,134 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.command;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.projects.ProjectInput;
+import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.server.project.SuggestParentCandidates;
+import com.google.gerrit.server.util.RequestScopePropagator;
+import com.google.gerrit.sshd.BaseCommand;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Answers;
+
+public class CreateTemplateCommandManifestTest {
+  private GerritApi gApi;
+  private FileRepoHelper fileRepoHelper;
+  private FileRepoHelper.RenderedTemplate rendered;
+  private CreateTemplateCommand command;
+  private ByteArrayOutputStream stdoutStream;
+
+  @Before
+  public void setUp() throws Exception {
+    gApi = mock(GerritApi.class, Answers.RETURNS_DEEP_STUBS);
+    fileRepoHelper = mock(FileRepoHelper.class);
+    rendered = mock(FileRepoHelper.RenderedTemplate.class);
+    when(fileRepoHelper.render(any(), any())).thenReturn(rendered);
+    RequestScopePropagator propagator = mock(RequestScopePropagator.class);
+    when(propagator.wrap(any(Callable.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+    command = new CreateTemplateCommand(
+        gApi, mock(SuggestParentCandidates.class), fileRepoHelper, new Gson(), propagator);
+    command.setTargets("template@master:main");
+    command.setJson("{\"team\": \"qa\"}");
+
+    stdoutStream = new ByteArrayOutputStream();
+    setField(SshCommand.class, "stdout", new PrintWriter(stdoutStream, true));
+    setField(SshCommand.class, "stderr", new PrintWriter(new ByteArrayOutputStream(), true));
+    // enableGracefulStop needs an SSH session
+    Class<?> context = BaseCommand.class.getDeclaredField("context").getType();
+    setField(BaseCommand.class, "context", mock(context, Answers.RETURNS_DEEP_STUBS));
+    setField(CreateTemplateCommand.class, "manifest", true);
+    command.threads = 4;
+  }
+
+  @Test
+  public void testManifest_createsParentsBeforeChildrenAndRendersOnce() throws Exception {
+    manifest(
+        "{\"name\": \"product/app\", \"parent\": \"product\"}",
+        "{\"name\": \"product/lib\", \"parent\": \"product\", \"owners\": [\"lib-owners\"]}",
+        "{\"name\": \"product\", \"parent\": \"base\", \"template_targets\": []}",
+        "{\"name\": \"product/docs\", \"parent\": \"product\", \"json\": {\"team\": \"docs\"}}");
+
+    command.run();
+
+    ArgumentCaptor<ProjectInput> inputs = ArgumentCaptor.forClass(ProjectInput.class);
+    verify(gApi.projects(), times(4)).create(inputs.capture());
+    assertEquals("product", inputs.getAllValues().get(0).name);
+    assertEquals("base", inputs.getAllValues().get(0).parent);
+    ProjectInput lib = inputs.getAllValues().stream().filter(input -> input.name.equals("product/lib")).findFirst().get();
+    assertEquals(List.of("lib-owners"), lib.owners);
+
+    verify(fileRepoHelper, times(1)).render(any(), eq(Map.of("team", "qa")));
+    verify(fileRepoHelper, times(1)).render(any(), eq(Map.of("team", "docs")));
+    verify(fileRepoHelper, never()).apply(eq("product"), any(), anyBoolean());
+    verify(fileRepoHelper).apply(eq("product/app"), any(), anyBoolean());
+    verify(fileRepoHelper).apply(eq("product/lib"), any(), anyBoolean());
+    verify(fileRepoHelper).apply(eq("product/docs"), any(), anyBoolean());
+    verify(rendered, times(2)).close();
+    assertTrue(stdoutStream.toString(), stdoutStream.toString().contains("Created 4 of 4 projects, 0 failed"));
+  }
+
+  @Test
+  public void testManifest_failedParentFailsChildren() throws Exception {
+    when(gApi.projects().name("missing").get()).thenThrow(new ResourceNotFoundException("missing"));
+    manifest(
+        "{\"name\": \"orphan\", \"parent\": \"missing\"}",
+        "{\"name\": \"orphan/child\", \"parent\": \"orphan\"}",
+        "{\"name\": \"a\", \"parent\": \"b\"}",
+        "{\"name\": \"b\", \"parent\": \"a\"}",
+        "{\"name\": \"standalone\"}");
+
+    command.run();
+
+    String stdout = stdoutStream.toString();
+    assertTrue(stdout, stdout.contains("orphan: failed: parent missing not found"));
+    assertTrue(stdout, stdout.contains("orphan/child: failed: parent orphan was not created"));
+    assertTrue(stdout, stdout.contains("a: failed: parent b can never be created"));
+    assertTrue(stdout, stdout.contains("standalone: created"));
+    assertTrue(stdout, stdout.contains("Created 1 of 5 projects, 4 failed"));
+    verify(rendered, times(1)).close();
+  }
+
+  private void manifest(String... lines) throws Exception {
+    String manifest = String.join("\n", lines) + "\n";
+    setField(BaseCommand.class, "in", new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private void setField(Class<?> owner, String fieldName, Object value) throws Exception {
+    Field field = owner.getDeclaredField(fieldName);
+    field.setAccessible(true);
+    field.set(command, value);
+  }
+}
@@ -0,0 +1,370 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.command;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.internal.storage.dfs.DfsPackFile;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Before;
+import org.junit.Test;
+import tech.xederro.zenith.ZenithConfig;
+import tech.xederro.zenith.ZenithMetrics;
+
+public class FileRepoHelperTest {
+  private InMemoryRepository templateRepo;
+  private InMemoryRepository targetRepo;
+  private GitRepositoryManager repoManager;
+  private ZenithConfig config;
+  private ZenithMetrics metrics;
+  private FileRepoHelper fileRepoHelper;
+
+  @Before
+  public void setUp() throws Exception {
+    templateRepo = new InMemoryRepository(new DfsRepositoryDescription("template"));
+    targetRepo = new InMemoryRepository(new DfsRepositoryDescription("target"));
+
+    // every caller closes the repository it opens
+    repoManager = mock(GitRepositoryManager.class);
+    when(repoManager.openRepository(Project.nameKey("template"))).thenAnswer(invocation -> {
+      templateRepo.incrementOpen();
+      return templateRepo;
+    });
+    when(repoManager.openRepository(Project.nameKey("target"))).thenAnswer(invocation -> {
+      targetRepo.incrementOpen();
+      return targetRepo;
+    });
+
+    config = mock(ZenithConfig.class);
+    metrics = spy(new ZenithMetrics(new DisabledMetricMaker()));
+    fileRepoHelper = newFileRepoHelper(new TemplateExecutor(1));
+
+    commit(templateRepo, "refs/heads/master", Map.of(
+        "README.md", "# {{name}}",
+        "src/Main.java", "class {{name}} {}"));
+  }
+
+  @Test
+  public void testCreateCommit_rendersTemplateIntoNewBranch() throws Exception {
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), false);
+
+    assertEquals(Map.of(
+        "README.md", "# Zenith",
+        "src/Main.java", "class Zenith {}"), files(targetRepo, "refs/heads/main"));
+  }
+
+  @Test
+  public void testCreateCommit_keepsFilesMissingFromTemplate() throws Exception {
+    commit(targetRepo, "refs/heads/main", Map.of(
+        "README.md", "old readme",
+        "docs/index.md", "docs"));
+
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), false);
+
+    assertEquals(Map.of(
+        "README.md", "# Zenith",
+        "docs/index.md", "docs",
+        "src/Main.java", "class Zenith {}"), files(targetRepo, "refs/heads/main"));
+  }
+
+  @Test
+  public void testCreateCommit_overrideDiscardsCurrentFiles() throws Exception {
+    commit(targetRepo, "refs/heads/main", Map.of("docs/index.md", "docs"));
+
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), true);
+
+    assertEquals(Map.of(
+        "README.md", "# Zenith",
+        "src/Main.java", "class Zenith {}"), files(targetRepo, "refs/heads/main"));
+  }
+
+  @Test
+  public void testCreateCommit_unchangedTreeKeepsBranch() throws Exception {
+    assertTrue(fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), false));
+    ObjectId head = targetRepo.resolve("refs/heads/main");
+    long objects = countObjects(targetRepo);
+
+    assertFalse(fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), false));
+    assertFalse(fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), true));
+
+    assertEquals(head, targetRepo.resolve("refs/heads/main"));
+    assertEquals(objects, countObjects(targetRepo));
+
+    assertTrue(fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Other"), false));
+    assertNotEquals(head, targetRepo.resolve("refs/heads/main"));
+  }
+
+  @Test
+  public void testCreateCommit_recordsMetrics() throws Exception {
+    commit(templateRepo, "refs/heads/master", Map.of("gradle/wrapper.jar", "PK\u0003\u0004\u0000", "README.md", "# {{name}}"));
+
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), false);
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), false);
+
+    verify(metrics, times(2)).templateFiles(1, 1);
+    verify(metrics).templateInserted(longThat(bytes -> bytes > 0));
+    verify(metrics).templateRefUpdate(ReceiveCommand.Result.OK);
+  }
+
+  @Test
+  public void testCreateCommit_streamsLargeOutput() throws Exception {
+    commit(templateRepo, "refs/heads/master", Map.of("large.txt", "{{#each lines}}{{this}}\n{{/each}}"));
+    List<String> lines = new ArrayList<>();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 30000; i++) {
+      String line = i + " " + "x".repeat(64);
+      lines.add(line);
+      expected.append(line).append('\n');
+    }
+
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("lines", lines), true);
+
+    assertEquals(Map.of("large.txt", expected.toString()), files(targetRepo, "refs/heads/main"));
+    assertFalse(fileRepoHelper.createCommit("target", "template@master:main", Map.of("lines", lines), true));
+  }
+
+  @Test
+  public void testCreateCommits_combinesTargetsOfOneBranch() throws Exception {
+    commit(templateRepo, "refs/heads/ci", Map.of("ci.yaml", "team: {{name}}", "README.md", "CI for {{name}}"));
+    ObjectId head = commit(targetRepo, "refs/heads/main", Map.of("docs/index.md", "docs"));
+
+    assertTrue(fileRepoHelper.createCommits(
+        "target", List.of("template@master:main", "template@ci:main", "template@ci:ci"), Map.of("name", "Zenith"), false));
+
+    // One commit on top of the previous head, the later template wins for README.md
+    try (RevWalk rw = new RevWalk(targetRepo)) {
+      RevCommit commit = rw.parseCommit(targetRepo.resolve("refs/heads/main"));
+      assertEquals(1, commit.getParentCount());
+      assertEquals(head, commit.getParent(0));
+    }
+    assertEquals(Map.of(
+        "README.md", "CI for Zenith",
+        "ci.yaml", "team: Zenith",
+        "docs/index.md", "docs",
+        "src/Main.java", "class Zenith {}"), files(targetRepo, "refs/heads/main"));
+    assertEquals(Map.of(
+        "README.md", "CI for Zenith",
+        "ci.yaml", "team: Zenith"), files(targetRepo, "refs/heads/ci"));
+
+    assertFalse(fileRepoHelper.createCommits(
+        "target", List.of("template@master:main", "template@ci:main", "template@ci:ci"), Map.of("name", "Zenith"), false));
+  }
+
+  @Test
+  public void testPreviewCommits_reportsChangesWithoutWriting() throws Exception {
+    ObjectId head = commit(targetRepo, "refs/heads/main", Map.of(
+        "README.md", "old readme",
+        "docs/index.md", "docs"));
+    long objects = countObjects(targetRepo);
+
+    List<FileRepoHelper.PreviewChange> changes = fileRepoHelper.previewCommits(
+        "target", List.of("template@master:main"), Map.of("name", "Zenith"), true, true);
+
+    assertEquals(List.of("M README.md", "D docs/index.md", "A src/Main.java"),
+        changes.stream().map(change -> change.type().name().charAt(0) + " " + change.path()).toList());
+    assertTrue(changes.stream().allMatch(change -> change.branch().equals("refs/heads/main")));
+    assertEquals("--- a/README.md\n+++ b/README.md\n@@ -1 +1 @@\n-old readme\n\\ No newline at end of file\n"
+        + "+# Zenith\n\\ No newline at end of file\n", changes.get(0).diff());
+    assertTrue(changes.get(2).diff(), changes.get(2).diff().startsWith("--- /dev/null\n+++ b/src/Main.java\n"));
+
+    assertEquals(head, targetRepo.resolve("refs/heads/main"));
+    assertEquals(objects, countObjects(targetRepo));
+
+    changes = fileRepoHelper.previewCommits(
+        "target", List.of("template@master:main"), Map.of("name", "Zenith"), false, false);
+    assertEquals(List.of("M README.md", "A src/Main.java"),
+        changes.stream().map(change -> change.type().name().charAt(0) + " " + change.path()).toList());
+    assertNull(changes.get(0).diff());
+  }
+
+  @Test
+  public void testCreateCommit_parallelRenderingKeepsPathOrder() throws Exception {
+    Map<String, String> template = new HashMap<>();
+    Map<String, String> expected = new HashMap<>();
+    for (int i = 0; i < 200; i++) {
+      template.put("dir" + i % 7 + "/file" + i + ".txt", i + " {{name}}");
+      expected.put("dir" + i % 7 + "/file" + i + ".txt", i + " Zenith");
+    }
+    commit(templateRepo, "refs/heads/master", template);
+    commit(templateRepo, "refs/heads/other", template);
+
+    TemplateExecutor executor = new TemplateExecutor(4);
+    executor.start();
+    try {
+      newFileRepoHelper(executor).createCommit("target", "template@master:parallel", Map.of("name", "Zenith"), true);
+    } finally {
+      executor.stop();
+    }
+    fileRepoHelper.createCommit("target", "template@other:sequential", Map.of("name", "Zenith"), true);
+
+    assertEquals(expected, files(targetRepo, "refs/heads/parallel"));
+    assertEquals(targetRepo.resolve("refs/heads/sequential^{tree}"), targetRepo.resolve("refs/heads/parallel^{tree}"));
+  }
+
+  @Test
+  public void testCreateCommit_passesBinaryFilesThrough() throws Exception {
+    String binary = "PK\u0003\u0004\u0000{{name}}";
+    commit(templateRepo, "refs/heads/master", Map.of("gradle/wrapper.jar", binary, "README.md", "# {{name}}"));
+
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), true);
+
+    assertEquals(Map.of("gradle/wrapper.jar", binary, "README.md", "# Zenith"), files(targetRepo, "refs/heads/main"));
+    assertEquals(templateRepo.resolve("master:gradle/wrapper.jar"), targetRepo.resolve("main:gradle/wrapper.jar"));
+  }
+
+  @Test
+  public void testCreateCommit_passesExcludedFilesThrough() throws Exception {
+    when(config.getTemplateExcludes()).thenReturn(List.of("*.hbs"));
+    commit(templateRepo, "refs/heads/master", Map.of(
+        ".zenithignore", "assets/\ndocs/*\n!docs/index.md\n",
+        "assets/img/logo.svg", "<svg>{{name}}</svg>",
+        "docs/guide.md", "{{name}} guide",
+        "docs/index.md", "{{name}} index",
+        "partial.hbs", "{{name}}"));
+
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), true);
+
+    assertEquals(Map.of(
+        "assets/img/logo.svg", "<svg>{{name}}</svg>",
+        "docs/guide.md", "{{name}} guide",
+        "docs/index.md", "Zenith index",
+        "partial.hbs", "{{name}}"), files(targetRepo, "refs/heads/main"));
+  }
+
+  @Test
+  public void testCreateCommit_keepsExecutableMode() throws Exception {
+    commit(templateRepo, "refs/heads/master", Map.of("gradlew", "#!/bin/sh\n# {{name}}"));
+    try (ObjectInserter inserter = templateRepo.newObjectInserter()) {
+      DirCache dc = DirCache.newInCore();
+      DirCacheEditor editor = dc.editor();
+      ObjectId blobId = templateRepo.resolve("master:gradlew");
+      editor.add(new DirCacheEditor.PathEdit("gradlew") {
+        @Override
+        public void apply(DirCacheEntry ent) {
+          ent.setFileMode(FileMode.EXECUTABLE_FILE);
+          ent.setObjectId(blobId);
+        }
+      });
+      editor.finish();
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(dc.writeTree(inserter));
+      commit.setAuthor(new PersonIdent("Test", "test@example.com"));
+      commit.setCommitter(new PersonIdent("Test", "test@example.com"));
+      ObjectId commitId = inserter.insert(commit);
+      inserter.flush();
+      RefUpdate refUpdate = templateRepo.updateRef("refs/heads/master");
+      refUpdate.setNewObjectId(commitId);
+      refUpdate.forceUpdate();
+    }
+
+    fileRepoHelper.createCommit("target", "template@master:main", Map.of("name", "Zenith"), true);
+
+    try (RevWalk rw = new RevWalk(targetRepo)) {
+      TreeWalk tw = TreeWalk.forPath(targetRepo, "gradlew", rw.parseCommit(targetRepo.resolve("main")).getTree());
+      assertEquals(FileMode.EXECUTABLE_FILE, tw.getFileMode(0));
+    }
+    assertEquals(Map.of("gradlew", "#!/bin/sh\n# Zenith"), files(targetRepo, "refs/heads/main"));
+  }
+
+  private FileRepoHelper newFileRepoHelper(TemplateExecutor executor) {
+    return new FileRepoHelper(
+        mock(GerritApi.class),
+        repoManager,
+        new TemplateCache(CacheBuilder.newBuilder().build(), new Handlebars()),
+        executor,
+        config,
+        metrics);
+  }
+
+  static ObjectId commit(Repository repo, String branch, Map<String, String> files) throws Exception {
+    try (ObjectInserter inserter = repo.newObjectInserter()) {
+      DirCache dc = DirCache.newInCore();
+      DirCacheEditor editor = dc.editor();
+      for (Map.Entry<String, String> file : files.entrySet()) {
+        ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, file.getValue().getBytes(StandardCharsets.UTF_8));
+        editor.add(new DirCacheEditor.PathEdit(file.getKey()) {
+          @Override
+          public void apply(DirCacheEntry ent) {
+            ent.setFileMode(FileMode.REGULAR_FILE);
+            ent.setObjectId(blobId);
+          }
+        });
+      }
+      editor.finish();
+
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(dc.writeTree(inserter));
+      commit.setAuthor(new PersonIdent("Test", "test@example.com"));
+      commit.setCommitter(new PersonIdent("Test", "test@example.com"));
+      commit.setMessage("test");
+      ObjectId head = repo.resolve(branch);
+      if (head != null) {
+        commit.setParentIds(head);
+      }
+      ObjectId commitId = inserter.insert(commit);
+      inserter.flush();
+
+      RefUpdate refUpdate = repo.updateRef(branch);
+      refUpdate.setNewObjectId(commitId);
+      refUpdate.forceUpdate();
+      return commitId;
+    }
+  }
+
+  private static long countObjects(InMemoryRepository repo) throws Exception {
+    long count = 0;
+    for (DfsPackFile pack : repo.getObjectDatabase().getPacks()) {
+      count += pack.getPackDescription().getObjectCount();
+    }
+    return count;
+  }
+
+  static Map<String, String> files(Repository repo, String branch) throws Exception {
+    Map<String, String> files = new HashMap<>();
+    try (RevWalk rw = new RevWalk(repo); TreeWalk tw = new TreeWalk(repo)) {
+      tw.addTree(rw.parseCommit(repo.resolve(branch)).getTree());
+      tw.setRecursive(true);
+      while (tw.next()) {
+        byte[] data = repo.open(tw.getObjectId(0)).getBytes();
+        files.put(tw.getPathString(), new String(data, StandardCharsets.UTF_8));
+      }
+    }
+    return files;
+  }
+}
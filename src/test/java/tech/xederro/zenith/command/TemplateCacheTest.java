@@ -0,0 +1,91 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.command;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import com.google.common.cache.CacheBuilder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ObjectStream;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TemplateCacheTest {
+  private static final byte[] SOURCE = "Hello {{name}}".getBytes(StandardCharsets.UTF_8);
+  private static final ObjectId BLOB_ID = ObjectId.fromString("0123456789012345678901234567890123456789");
+
+  private TemplateCache templateCache;
+  private ObjectReader reader;
+
+  @Before
+  public void setUp() throws Exception {
+    templateCache = new TemplateCache(CacheBuilder.newBuilder().build(), new Handlebars());
+    reader = mock(ObjectReader.class);
+    when(reader.open(BLOB_ID)).thenReturn(new ObjectLoader.SmallObject(Constants.OBJ_BLOB, SOURCE));
+  }
+
+  @Test
+  public void testGet_compilesEachBlobOnce() throws Exception {
+    Template first = templateCache.get(BLOB_ID, reader).get();
+    Template second = templateCache.get(BLOB_ID, reader).get();
+
+    assertSame(first, second);
+    assertEquals("Hello Zenith", second.apply(Map.of("name", "Zenith")));
+    verify(reader, times(1)).open(BLOB_ID);
+  }
+
+  @Test
+  public void testGet_binaryBlobIsNotCompiled() throws Exception {
+    ObjectId binaryId = ObjectId.fromString("9876543210987654321098765432109876543210");
+    byte[] binary = {'P', 'K', 3, 4, 0, 0, '{', '{'};
+    when(reader.open(binaryId)).thenReturn(new ObjectLoader.SmallObject(Constants.OBJ_BLOB, binary));
+
+    assertTrue(templateCache.get(binaryId, reader).isEmpty());
+    assertTrue(templateCache.get(binaryId, reader).isEmpty());
+    verify(reader, times(1)).open(binaryId);
+  }
+
+  @Test
+  public void testGet_largeBlobIsStreamed() throws Exception {
+    ObjectId largeId = ObjectId.fromString("1111111111111111111111111111111111111111");
+    ObjectLoader loader = mock(ObjectLoader.class);
+    when(loader.isLarge()).thenReturn(true);
+    when(loader.openStream()).thenAnswer(invocation -> new ObjectStream.SmallStream(Constants.OBJ_BLOB, SOURCE));
+    when(reader.open(largeId)).thenReturn(loader);
+
+    assertEquals("Hello Zenith", templateCache.get(largeId, reader).get().apply(Map.of("name", "Zenith")));
+    verify(loader, never()).getCachedBytes();
+  }
+
+  @Test
+  public void testWeigher_usesTemplateLength() throws Exception {
+    Optional<Template> template = templateCache.get(BLOB_ID, reader);
+
+    assertEquals(1 + SOURCE.length, new TemplateCache.TemplateWeigher().weigh(BLOB_ID, template));
+    assertEquals(1, new TemplateCache.TemplateWeigher().weigh(BLOB_ID, Optional.empty()));
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import static org.junit.Assert.*;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CompactValuesTest {
+  private static final TreeKey PUSH = TreeKey.access("refs/heads/*", "push", "Registered-Users");
+  private static final TreeKey READ = TreeKey.access("refs/*", "read", "Anonymous-Users");
+  private static final TreeKey SUBMIT = TreeKey.access("refs/heads/*", "submit", "Administrators");
+
+  @Test
+  public void testOwn_dropsValuesInheritedUnchanged() {
+    Map<TreeKey, ProjectTree.Value> parent = Map.of(
+        PUSH, new ProjectTree.Value("ALLOW", false),
+        READ, new ProjectTree.Value("ALLOW", false));
+    Map<TreeKey, ProjectTree.Value> child = Map.of(
+        TreeKey.PARENT, new ProjectTree.Value("parent", false),
+        TreeKey.config("use_content_merge"), new ProjectTree.Value("TRUE", true),
+        PUSH, new ProjectTree.Value("ALLOW", true),
+        READ, new ProjectTree.Value("DENY", false));
+
+    Map<TreeKey, ProjectTree.Value> own = CompactValues.own(child, parent);
+
+    assertEquals(3, own.size());
+    assertFalse(own.containsKey(PUSH));
+    assertEquals(new ProjectTree.Value("DENY", false), own.get(READ));
+    assertEquals(new ProjectTree.Value("TRUE", true), own.get(TreeKey.config("use_content_merge")));
+  }
+
+  @Test
+  public void testRemoved_listsBlockedInheritableKeys() {
+    Map<TreeKey, ProjectTree.Value> parent = Map.of(
+        TreeKey.config("state"), new ProjectTree.Value("ACTIVE", false),
+        PUSH, new ProjectTree.Value("ALLOW", false),
+        READ, new ProjectTree.Value("ALLOW", false));
+    Map<TreeKey, ProjectTree.Value> child = Map.of(READ, new ProjectTree.Value("ALLOW", true));
+
+    assertEquals(List.of(PUSH.toString()), CompactValues.removed(child, parent));
+  }
+
+  @Test
+  public void testExpand_reconstructsEffectiveValues() {
+    Map<TreeKey, ProjectTree.Value> parent = Map.of(
+        PUSH, new ProjectTree.Value("ALLOW", false),
+        READ, new ProjectTree.Value("ALLOW", true),
+        SUBMIT, new ProjectTree.Value("ALLOW", false));
+    Map<TreeKey, ProjectTree.Value> child = Map.of(
+        TreeKey.PARENT, new ProjectTree.Value("parent", false),
+        PUSH, new ProjectTree.Value("ALLOW", true),
+        READ, new ProjectTree.Value("ALLOW", true),
+        TreeKey.access("refs/heads/*", "push", "Administrators"), new ProjectTree.Value("BLOCK", false));
+
+    Map<TreeKey, ProjectTree.Value> expanded = CompactValues.expand(
+        parent, CompactValues.own(child, parent), CompactValues.removed(child, parent));
+
+    assertEquals(child, expanded);
+  }
+
+  @Test
+  public void testCompactTree_roundTrip() {
+    Map<TreeKey, ProjectTree.Value> rootValues = Map.of(
+        TreeKey.PARENT, new ProjectTree.Value(null, false),
+        PUSH, new ProjectTree.Value("ALLOW", false));
+    Map<TreeKey, ProjectTree.Value> childValues = Map.of(
+        TreeKey.PARENT, new ProjectTree.Value("root", false),
+        PUSH, new ProjectTree.Value("ALLOW", true),
+        READ, new ProjectTree.Value("ALLOW", false));
+    Map<TreeKey, ProjectTree.Value> leafValues = Map.of(
+        TreeKey.PARENT, new ProjectTree.Value("child", false),
+        READ, new ProjectTree.Value("ALLOW", true));
+
+    ProjectTree.ProjectData leaf = new ProjectTree.ProjectData("leaf", "child", new ArrayList<>(), new HashMap<>(leafValues));
+    ProjectTree.ProjectData child = new ProjectTree.ProjectData("child", "root", new ArrayList<>(List.of(leaf)), new HashMap<>(childValues));
+    ProjectTree.ProjectData root = new ProjectTree.ProjectData("root", null, new ArrayList<>(List.of(child)), new HashMap<>(rootValues));
+
+    CompactValues.compactTree(root, Map.of());
+
+    assertEquals(rootValues, root.values);
+    assertNull(root.removed);
+    assertEquals(2, child.values.size());
+    assertEquals(1, leaf.values.size());
+    assertEquals(List.of(PUSH.toString()), leaf.removed);
+
+    CompactValues.expandTree(root, Map.of());
+
+    assertEquals(rootValues, root.values);
+    assertEquals(childValues, child.values);
+    assertEquals(leafValues, leaf.values);
+    assertNull(leaf.removed);
+  }
+
+  @Test
+  public void testJson_clientExpansionMatchesExpand() {
+    TreeKey panel = TreeKey.extensionPanel("change screen banner");
+    TreeKey pluginKey = TreeKey.plugin("reviewers", "reviewer");
+    Map<TreeKey, ProjectTree.Value> rootValues = Map.of(
+        TreeKey.PARENT, new ProjectTree.Value(null, false),
+        TreeKey.config("use_content_merge"), new ProjectTree.Value("TRUE", false),
+        panel, new ProjectTree.Value("shown", false),
+        pluginKey, new ProjectTree.Value("Administrators", false),
+        PUSH, new ProjectTree.Value("ALLOW", false),
+        READ, new ProjectTree.Value("ALLOW", false));
+    Map<TreeKey, ProjectTree.Value> childValues = Map.of(
+        TreeKey.PARENT, new ProjectTree.Value("root", false),
+        TreeKey.config("use_content_merge"), new ProjectTree.Value("TRUE", true),
+        pluginKey, new ProjectTree.Value("Administrators", true),
+        PUSH, new ProjectTree.Value("ALLOW", true));
+
+    ProjectTree.ProjectData child = new ProjectTree.ProjectData("child", "root", new ArrayList<>(), new HashMap<>(childValues));
+    ProjectTree.ProjectData root = new ProjectTree.ProjectData("root", null, new ArrayList<>(List.of(child)), new HashMap<>(rootValues));
+    CompactValues.compactTree(root, Map.of());
+    JsonObject json = new Gson().toJsonTree(root).getAsJsonObject();
+
+    // same rule as expandValues in the frontend, only values flagged inheritable are copied from the parent
+    JsonObject parentValues = json.getAsJsonObject("values");
+    JsonObject childJson = json.getAsJsonArray("children").get(0).getAsJsonObject();
+    JsonObject expanded = childJson.getAsJsonObject("values").deepCopy();
+    Set<String> removed = new HashSet<>();
+    if (childJson.has("removed")) {
+      childJson.getAsJsonArray("removed").forEach(key -> removed.add(key.getAsString()));
+    }
+    for (Map.Entry<String, JsonElement> entry : parentValues.entrySet()) {
+      JsonObject value = entry.getValue().getAsJsonObject();
+      if (value.has("inheritable") && !expanded.has(entry.getKey()) && !removed.contains(entry.getKey())) {
+        JsonObject inherited = value.deepCopy();
+        inherited.addProperty("is_inherited", true);
+        expanded.add(entry.getKey(), inherited);
+      }
+    }
+
+    assertEquals(List.of(READ.toString()), child.removed);
+    assertEquals(childValues, new ValuesAdapter().fromJsonTree(expanded));
+    CompactValues.expandTree(root, Map.of());
+    assertEquals(child.values, new ValuesAdapter().fromJsonTree(expanded));
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.ProjectDeletedListener;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProjectTreeCacheTest {
+  private static final ObjectId REVISION = ObjectId.fromString("0123456789abcdef0123456789abcdef01234567");
+
+  private ProjectTreeCache projectTreeCache;
+  private AtomicInteger loads;
+
+  private ProjectTreeCache.Key parentKey;
+  private ProjectTreeCache.Key childKey;
+  private ProjectTreeCache.Key otherKey;
+
+  @Before
+  public void setUp() throws Exception {
+    projectTreeCache = new ProjectTreeCache(CacheBuilder.newBuilder().build());
+    loads = new AtomicInteger();
+
+    parentKey = ProjectTreeCache.Key.child(ProjectTreeCache.Key.root(ValueFilter.ALL), "parent", REVISION);
+    childKey = ProjectTreeCache.Key.child(parentKey, "child", REVISION);
+    otherKey = ProjectTreeCache.Key.child(ProjectTreeCache.Key.root(ValueFilter.ALL), "other", REVISION);
+
+    load(parentKey);
+    load(childKey);
+    load(otherKey);
+  }
+
+  @Test
+  public void testGet_loadsOncePerKey() throws Exception {
+    load(parentKey);
+    load(childKey);
+
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testGet_keyDependsOnAncestorRevisions() throws Exception {
+    ProjectTreeCache.Key updatedParent = ProjectTreeCache.Key.child(ProjectTreeCache.Key.root(ValueFilter.ALL), "parent", ObjectId.zeroId());
+    load(ProjectTreeCache.Key.child(updatedParent, "child", REVISION));
+
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testGet_keyDependsOnFilter() throws Exception {
+    ValueFilter filter = ValueFilter.of(List.of("label Code-Review * label-range"), List.of());
+    load(ProjectTreeCache.Key.child(ProjectTreeCache.Key.root(filter), "parent", REVISION));
+
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testGet_keyDependsOnHiddenAncestors() throws Exception {
+    ProjectTreeCache.Key hiddenParent = ProjectTreeCache.Key.root(
+        ValueFilter.ALL, ImmutableList.of("parent"), ImmutableList.of(REVISION));
+    ProjectTreeCache.Key hiddenChildKey = ProjectTreeCache.Key.child(hiddenParent, "child", REVISION);
+    load(hiddenChildKey);
+
+    projectTreeCache.onGitReferenceUpdated(refUpdated("parent", RefNames.REFS_CONFIG));
+    load(hiddenChildKey);
+
+    assertEquals(5, loads.get());
+  }
+
+  @Test
+  public void testConfigUpdate_invalidatesProjectAndDescendants() throws Exception {
+    projectTreeCache.onGitReferenceUpdated(refUpdated("parent", RefNames.REFS_CONFIG));
+
+    load(parentKey);
+    load(childKey);
+    load(otherKey);
+
+    assertEquals(5, loads.get());
+  }
+
+  @Test
+  public void testBranchUpdate_keepsEntries() throws Exception {
+    projectTreeCache.onGitReferenceUpdated(refUpdated("parent", "refs/heads/master"));
+
+    load(parentKey);
+    load(childKey);
+
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testProjectDeleted_invalidatesProject() throws Exception {
+    ProjectDeletedListener.Event event = mock(ProjectDeletedListener.Event.class);
+    when(event.getProjectName()).thenReturn("child");
+
+    projectTreeCache.onProjectDeleted(event);
+
+    load(parentKey);
+    load(childKey);
+
+    assertEquals(4, loads.get());
+  }
+
+  private void load(ProjectTreeCache.Key key) throws Exception {
+    projectTreeCache.get(key, () -> {
+      loads.incrementAndGet();
+      return Map.of(TreeKey.PARENT, new ProjectTree.Value(null, false));
+    });
+  }
+
+  private GitReferenceUpdatedListener.Event refUpdated(String project, String ref) {
+    GitReferenceUpdatedListener.Event event = mock(GitReferenceUpdatedListener.Event.class);
+    when(event.getProjectName()).thenReturn(project);
+    when(event.getRefName()).thenReturn(ref);
+    return event;
+  }
+}
@@ -20,23 +20,40 @@ package tech.xederro.zenith.endpoint;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.gerrit.entities.*;
 import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.projects.ProjectApi;
 import com.google.gerrit.extensions.api.projects.Projects;
 import com.google.gerrit.extensions.api.projects.Projects.QueryRequest;
+import com.google.gerrit.extensions.client.InheritableBoolean;
+import com.google.gerrit.extensions.client.SubmitType;
 import com.google.gerrit.extensions.common.ProjectInfo;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.ProjectPermission;
 import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.util.ThreadLocalRequestContext;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.eclipse.jgit.lib.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import tech.xederro.zenith.ZenithMetrics;
 
+import java.io.StringWriter;
 import java.util.*;
 
 public class ProjectTreeTest {
 
   private ProjectTree projectTree;
+  private ZenithMetrics metrics;
 
   @Mock private AccessSection mockAccessSection;
   @Mock private Permission mockPermission;
@@ -47,11 +64,26 @@ public class ProjectTreeTest {
   @Mock private ProjectCache projectCache;
   @Mock private Projects projects;
   @Mock private QueryRequest queryRequest;
+  @Mock private ThreadLocalRequestContext requestContext;
+  @Mock private PermissionBackend permissionBackend;
+  @Mock private PermissionBackend.WithUser user;
+  @Mock private PermissionBackend.ForProject visibleProject;
 
   @Before
   public void setUp() {
     MockitoAnnotations.openMocks(this);
-    projectTree = new ProjectTree(gerritApi, projectCache);
+    metrics = spy(new ZenithMetrics(new DisabledMetricMaker()));
+    when(permissionBackend.currentUser()).thenReturn(user);
+    when(user.project(any())).thenReturn(visibleProject);
+    when(visibleProject.testOrFalse(ProjectPermission.ACCESS)).thenReturn(true);
+    projectTree = new ProjectTree(
+        gerritApi,
+        projectCache,
+        permissionBackend,
+        new ProjectTreeCache(CacheBuilder.newBuilder().build()),
+        new ProjectTreeExecutor(1),
+        requestContext,
+        new TreeTrace(metrics, 0));
   }
 
   @Test
@@ -605,6 +637,366 @@ public class ProjectTreeTest {
     assertNotNull(queryRequest);
   }
 
+  @Test
+  public void testBuildTree_resolvesAncestorsThroughProjectCache() {
+    ProjectState allProjects = mock(ProjectState.class);
+    when(allProjects.getName()).thenReturn("All-Projects");
+    ProjectState parent = mock(ProjectState.class);
+    when(parent.getName()).thenReturn("parent");
+    when(parent.parents()).thenReturn(FluentIterable.of(allProjects));
+    when(allProjects.parents()).thenReturn(FluentIterable.of());
+
+    when(projectCache.get(Project.nameKey("parent"))).thenReturn(Optional.of(parent));
+    when(projectCache.get(Project.nameKey("All-Projects"))).thenReturn(Optional.of(allProjects));
+
+    ProjectTree.ProjectData root = projectTree.buildTree(
+        List.of(projectInfo("child1", "parent"), projectInfo("child2", "parent")), ValueFilter.ALL);
+
+    assertEquals("All-Projects", root.name);
+    assertEquals(1, root.children.size());
+    ProjectTree.ProjectData parentNode = root.children.getFirst();
+    assertEquals("parent", parentNode.name);
+    assertEquals("All-Projects", parentNode.parent);
+    assertEquals(2, parentNode.children.size());
+    assertEquals("child1", parentNode.children.get(0).name);
+    assertEquals("child2", parentNode.children.get(1).name);
+    verify(gerritApi, never()).projects();
+  }
+
+  @Test
+  public void testBuildTree_stopsAtHiddenParent() throws Exception {
+    CachedProjectConfig allProjectsConfig = mock(CachedProjectConfig.class);
+    ProjectState allProjects = mock(ProjectState.class);
+    when(allProjects.getName()).thenReturn("All-Projects");
+    when(allProjects.getConfig()).thenReturn(allProjectsConfig);
+    when(allProjects.parents()).thenReturn(FluentIterable.of());
+    CachedProjectConfig hiddenConfig = mock(CachedProjectConfig.class);
+    ProjectState hidden = mock(ProjectState.class);
+    when(hidden.getName()).thenReturn("hidden");
+    when(hidden.getConfig()).thenReturn(hiddenConfig);
+    when(hidden.parents()).thenReturn(FluentIterable.of(allProjects));
+    ProjectState child = mock(ProjectState.class);
+    when(child.getName()).thenReturn("child");
+    when(child.parents()).thenReturn(FluentIterable.of(hidden, allProjects));
+
+    when(projectCache.get(Project.nameKey("All-Projects"))).thenReturn(Optional.of(allProjects));
+    when(projectCache.get(Project.nameKey("hidden"))).thenReturn(Optional.of(hidden));
+    when(projectCache.get(Project.nameKey("child"))).thenReturn(Optional.of(child));
+    PermissionBackend.ForProject hiddenProject = mock(PermissionBackend.ForProject.class);
+    when(user.project(Project.nameKey("hidden"))).thenReturn(hiddenProject);
+
+    ProjectTree.ProjectData root = projectTree.buildTree(List.of(projectInfo("child", "hidden")), ValueFilter.ALL);
+
+    assertEquals("child", root.name);
+    assertEquals("hidden", root.parent);
+    assertTrue(root.children.isEmpty());
+    // neither the hidden parent nor the projects above it pass values down to the child
+    verify(hiddenConfig, never()).getAccessSections();
+    verify(allProjectsConfig, never()).getAccessSections();
+  }
+
+  @Test
+  public void testWriteTree_hiddenParentConfigUpdateRecomputesValues() throws Exception {
+    Project hiddenProject = mock(Project.class);
+    when(hiddenProject.getSubmitType()).thenReturn(SubmitType.REBASE_ALWAYS);
+    CachedProjectConfig hiddenConfig = mock(CachedProjectConfig.class);
+    when(hiddenConfig.getRevision()).thenReturn(Optional.of(ObjectId.fromString("0123456789abcdef0123456789abcdef01234567")));
+    ProjectState hidden = mock(ProjectState.class);
+    when(hidden.getName()).thenReturn("hidden");
+    when(hidden.getProject()).thenReturn(hiddenProject);
+    when(hidden.getConfig()).thenReturn(hiddenConfig);
+    when(hidden.parents()).thenReturn(FluentIterable.of());
+
+    Project project = mock(Project.class);
+    when(project.getSubmitType()).thenReturn(SubmitType.INHERIT);
+    ProjectState child = mock(ProjectState.class);
+    when(child.getName()).thenReturn("child");
+    when(child.getProject()).thenReturn(project);
+    when(child.getEffectiveMaxObjectSizeLimit()).thenReturn(maxObjectSizeLimit(0));
+    when(child.getConfig()).thenReturn(mock(CachedProjectConfig.class));
+    when(child.parents()).thenReturn(FluentIterable.of(hidden));
+
+    when(projectCache.get(Project.nameKey("hidden"))).thenReturn(Optional.of(hidden));
+    when(projectCache.get(Project.nameKey("child"))).thenReturn(Optional.of(child));
+    when(user.project(Project.nameKey("hidden"))).thenReturn(mock(PermissionBackend.ForProject.class));
+    List<ProjectTree.ProjectData> roots = List.of(new ProjectTree.ProjectData("child", "hidden", List.of(), null));
+    assertEquals("REBASE_ALWAYS", submitType(roots));
+
+    // the update of the hidden parent is not seen by the child, only its new revision is
+    when(hiddenProject.getSubmitType()).thenReturn(SubmitType.CHERRY_PICK);
+    assertEquals("REBASE_ALWAYS", submitType(roots));
+    when(hiddenConfig.getRevision()).thenReturn(Optional.of(ObjectId.zeroId()));
+    assertEquals("CHERRY_PICK", submitType(roots));
+  }
+
+  @Test
+  public void testWriteTree_streamsNodesAndReleasesValues() throws Exception {
+    ProjectState allProjects = mock(ProjectState.class);
+    when(allProjects.getName()).thenReturn("All-Projects");
+    when(allProjects.parents()).thenReturn(FluentIterable.of());
+    when(projectCache.get(Project.nameKey("All-Projects"))).thenReturn(Optional.of(allProjects));
+
+    List<ProjectTree.ProjectData> roots = projectTree.buildRoots(List.of(projectInfo("child", "All-Projects")));
+    StringWriter out = new StringWriter();
+    projectTree.writeTree(roots, ValueFilter.ALL, false, new JsonWriter(out));
+
+    JsonObject root = JsonParser.parseString(out.toString()).getAsJsonObject();
+    assertEquals("All-Projects", root.get("name").getAsString());
+    assertFalse(root.has("parent"));
+    JsonObject child = root.getAsJsonArray("children").get(0).getAsJsonObject();
+    assertEquals("child", child.get("name").getAsString());
+    JsonObject parentValue = child.getAsJsonObject("values").getAsJsonObject("parent");
+    assertEquals("All-Projects", parentValue.get("value").getAsString());
+    assertFalse(parentValue.get("is_inherited").getAsBoolean());
+    assertEquals(0, child.getAsJsonArray("children").size());
+    assertNull(roots.getFirst().children.getFirst().values);
+  }
+
+  @Test
+  public void testBuildTree_keyFilterSkipsUnselectedStages() {
+    Project project = mock(Project.class);
+    when(project.getBooleanConfig(any())).thenReturn(InheritableBoolean.TRUE);
+    when(project.getSubmitType()).thenReturn(SubmitType.MERGE_IF_NECESSARY);
+    CachedProjectConfig config = mock(CachedProjectConfig.class);
+    ProjectState allProjects = mock(ProjectState.class);
+    when(allProjects.getName()).thenReturn("All-Projects");
+    when(allProjects.getProject()).thenReturn(project);
+    when(allProjects.getEffectiveMaxObjectSizeLimit()).thenReturn(maxObjectSizeLimit(0));
+    when(allProjects.getConfig()).thenReturn(config);
+    when(allProjects.parents()).thenReturn(FluentIterable.of());
+    when(projectCache.get(Project.nameKey("All-Projects"))).thenReturn(Optional.of(allProjects));
+
+    ProjectTree.ProjectData root = projectTree.buildTree(
+        List.of(projectInfo("All-Projects", null)),
+        ValueFilter.of(List.of("use_content_merge"), List.of("label ")));
+
+    assertEquals(Set.of(TreeKey.config("use_content_merge")), root.values.keySet());
+    assertEquals(new ProjectTree.Value("TRUE", false), root.values.get(TreeKey.config("use_content_merge")));
+    verify(config).getLabelSections();
+    verify(config, never()).getAccessSections();
+    verify(config, never()).getPluginConfigs();
+    verify(config, never()).getExtensionPanelSections();
+  }
+
+  @Test
+  public void testBuildTree_countsComputedCachedAndFailedNodes() {
+    Project project = mock(Project.class);
+    when(project.getSubmitType()).thenReturn(SubmitType.MERGE_IF_NECESSARY);
+    ProjectState allProjects = mock(ProjectState.class);
+    when(allProjects.getName()).thenReturn("All-Projects");
+    when(allProjects.getProject()).thenReturn(project);
+    when(allProjects.getEffectiveMaxObjectSizeLimit()).thenReturn(maxObjectSizeLimit(0));
+    when(allProjects.getConfig()).thenReturn(mock(CachedProjectConfig.class));
+    when(allProjects.parents()).thenReturn(FluentIterable.of());
+    when(projectCache.get(Project.nameKey("All-Projects"))).thenReturn(Optional.of(allProjects));
+    when(projectCache.get(Project.nameKey("missing"))).thenReturn(Optional.empty());
+    List<ProjectInfo> infos = List.of(projectInfo("All-Projects", null), projectInfo("missing", "All-Projects"));
+
+    projectTree.buildTree(infos, ValueFilter.ALL);
+    projectTree.buildTree(infos, ValueFilter.ALL);
+
+    verify(metrics).treeNode(ZenithMetrics.NodeResult.COMPUTED);
+    verify(metrics).treeNode(ZenithMetrics.NodeResult.CACHED);
+    verify(metrics, times(2)).treeNode(ZenithMetrics.NodeResult.FAILED);
+    verify(metrics).treeComputedKeys(anyInt());
+  }
+
+  @Test
+  public void testBuildTree_unknownParentBecomesRoot() {
+    when(projectCache.get(Project.nameKey("missing"))).thenReturn(Optional.empty());
+
+    ProjectTree.ProjectData root = projectTree.buildTree(List.of(projectInfo("orphan", "missing")), ValueFilter.ALL);
+
+    assertEquals("orphan", root.name);
+    assertEquals("missing", root.parent);
+    assertTrue(root.children.isEmpty());
+  }
+
+  @Test
+  public void testBuildTree_parallelEvaluationFillsEveryNode() {
+    ProjectState allProjects = mock(ProjectState.class);
+    when(allProjects.getName()).thenReturn("All-Projects");
+    when(allProjects.parents()).thenReturn(FluentIterable.of());
+    when(projectCache.get(Project.nameKey("All-Projects"))).thenReturn(Optional.of(allProjects));
+
+    ProjectTreeExecutor executor = new ProjectTreeExecutor(4);
+    executor.start();
+    try {
+      ProjectTree parallelTree = new ProjectTree(
+          gerritApi, projectCache, permissionBackend, new ProjectTreeCache(CacheBuilder.newBuilder().build()), executor, requestContext,
+          new TreeTrace(metrics, 0));
+
+      List<ProjectInfo> infos = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        infos.add(projectInfo("project" + i, "All-Projects"));
+      }
+
+      ProjectTree.ProjectData root = parallelTree.buildTree(infos, ValueFilter.ALL);
+
+      assertEquals("All-Projects", root.name);
+      assertEquals(50, root.children.size());
+      for (ProjectTree.ProjectData child : root.children) {
+        assertNotNull(child.values);
+        assertEquals("All-Projects", child.values.get(TreeKey.PARENT).value());
+      }
+    } finally {
+      executor.stop();
+    }
+  }
+
+  @Test
+  public void testGetConfigValues_inheritedFromParent() {
+    Project project = mock(Project.class);
+    when(project.getBooleanConfig(any())).thenReturn(InheritableBoolean.INHERIT);
+    when(project.getSubmitType()).thenReturn(SubmitType.INHERIT);
+    when(project.getState()).thenReturn(com.google.gerrit.extensions.client.ProjectState.ACTIVE);
+
+    Project parentProject = mock(Project.class);
+    when(parentProject.getSubmitType()).thenReturn(SubmitType.REBASE_ALWAYS);
+    ProjectState parentState = mock(ProjectState.class);
+    when(parentState.getProject()).thenReturn(parentProject);
+    when(parentState.is(any())).thenReturn(true);
+
+    ProjectState state = mock(ProjectState.class);
+    when(state.getProject()).thenReturn(project);
+    when(state.getEffectiveMaxObjectSizeLimit()).thenReturn(maxObjectSizeLimit(0));
+    when(state.parents()).thenReturn(FluentIterable.of(parentState));
+
+    Map<TreeKey, ProjectTree.Value> result = projectTree.getConfigValues(state);
+
+    assertEquals(17, result.size());
+    assertEquals(new ProjectTree.Value("TRUE", true), result.get(TreeKey.config("use_content_merge")));
+    assertEquals(new ProjectTree.Value("TRUE", true), result.get(TreeKey.config("require_change_id")));
+    assertEquals(new ProjectTree.Value("REBASE_ALWAYS", true), result.get(TreeKey.config("default_submit_type")));
+    assertEquals(new ProjectTree.Value("NOT_AVAILABLE", false), result.get(TreeKey.config("max_object_size_limit")));
+    assertEquals(new ProjectTree.Value("ACTIVE", false), result.get(TreeKey.config("state")));
+  }
+
+  @Test
+  public void testGetConfigValues_configuredValues() {
+    Project project = mock(Project.class);
+    when(project.getBooleanConfig(any())).thenReturn(InheritableBoolean.FALSE);
+    when(project.getSubmitType()).thenReturn(SubmitType.CHERRY_PICK);
+    when(project.getMaxObjectSizeLimit()).thenReturn("10m");
+    when(project.getState()).thenReturn(com.google.gerrit.extensions.client.ProjectState.READ_ONLY);
+
+    ProjectState state = mock(ProjectState.class);
+    when(state.getProject()).thenReturn(project);
+    when(state.getEffectiveMaxObjectSizeLimit()).thenReturn(maxObjectSizeLimit(10 << 20));
+    when(state.parents()).thenReturn(FluentIterable.of(mock(ProjectState.class)));
+
+    Map<TreeKey, ProjectTree.Value> result = projectTree.getConfigValues(state);
+
+    assertEquals(new ProjectTree.Value("FALSE", false), result.get(TreeKey.config("use_signed_off_by")));
+    assertEquals(new ProjectTree.Value("CHERRY_PICK", false), result.get(TreeKey.config("default_submit_type")));
+    assertEquals(new ProjectTree.Value("10m", false), result.get(TreeKey.config("max_object_size_limit")));
+    assertEquals(new ProjectTree.Value("READ_ONLY", false), result.get(TreeKey.config("state")));
+  }
+
+  @Test
+  public void testGetConfigValues_maxObjectSizeLimitOfParent() {
+    Project project = mock(Project.class);
+    when(project.getSubmitType()).thenReturn(SubmitType.MERGE_IF_NECESSARY);
+
+    ProjectState state = mock(ProjectState.class);
+    when(state.getProject()).thenReturn(project);
+    when(state.getEffectiveMaxObjectSizeLimit()).thenReturn(maxObjectSizeLimit(10 << 20));
+    when(state.parents()).thenReturn(FluentIterable.of(mock(ProjectState.class)));
+
+    Map<TreeKey, ProjectTree.Value> result = projectTree.getConfigValues(state);
+
+    // like the config REST API a limit applies, but the project itself configures none
+    assertEquals(new ProjectTree.Value(null, false), result.get(TreeKey.config("max_object_size_limit")));
+  }
+
+  @Test
+  public void testGetConfigValues_inheritWithoutParent() {
+    Project project = mock(Project.class);
+    when(project.getBooleanConfig(any())).thenReturn(InheritableBoolean.INHERIT);
+    when(project.getSubmitType()).thenReturn(SubmitType.INHERIT);
+
+    ProjectState state = mock(ProjectState.class);
+    when(state.getProject()).thenReturn(project);
+    when(state.getEffectiveMaxObjectSizeLimit()).thenReturn(maxObjectSizeLimit(0));
+    when(state.parents()).thenReturn(FluentIterable.of());
+
+    Map<TreeKey, ProjectTree.Value> result = projectTree.getConfigValues(state);
+
+    assertEquals(new ProjectTree.Value("NOT_AVAILABLE", false), result.get(TreeKey.config("reject_empty_commit")));
+    assertEquals(new ProjectTree.Value(Project.DEFAULT_SUBMIT_TYPE.name(), true), result.get(TreeKey.config("default_submit_type")));
+    assertEquals(new ProjectTree.Value("NOT_AVAILABLE", false), result.get(TreeKey.config("state")));
+  }
+
+  @Test
+  public void testTruncate_keepsChildCountOfCutNodes() {
+    ProjectTree.ProjectData grandChild = new ProjectTree.ProjectData("grandChild", "child", new ArrayList<>(), null);
+    ProjectTree.ProjectData child = new ProjectTree.ProjectData("child", "root", new ArrayList<>(List.of(grandChild)), null);
+    ProjectTree.ProjectData root = new ProjectTree.ProjectData("root", null, new ArrayList<>(List.of(child)), null);
+
+    ProjectTree.truncate(List.of(root), 1);
+
+    assertNull(root.childCount);
+    assertEquals(List.of(child), root.children);
+    assertEquals(Integer.valueOf(1), child.childCount);
+    assertTrue(child.children.isEmpty());
+  }
+
+  @Test
+  public void testRootsFromProject_loadsLevelsAndCountsDeepest() throws Exception {
+    ProjectApi projectApi = mock(ProjectApi.class);
+    when(gerritApi.projects()).thenReturn(projects);
+    when(projects.name("parent")).thenReturn(projectApi);
+    when(projectApi.get()).thenReturn(projectInfo("parent", "All-Projects"));
+    when(projects.query()).thenReturn(queryRequest);
+    mockQuery("parent:\"parent\"", projectInfo("child2", "parent"), projectInfo("child1", "parent"));
+    mockQuery("parent:\"child1\" OR parent:\"child2\"", projectInfo("grandChild", "child1"));
+
+    List<ProjectTree.ProjectData> roots = projectTree.rootsFromProject("parent", 1);
+
+    assertEquals(1, roots.size());
+    ProjectTree.ProjectData root = roots.getFirst();
+    assertEquals("parent", root.name);
+    assertEquals("All-Projects", root.parent);
+    assertNull(root.childCount);
+    assertEquals(2, root.children.size());
+    assertEquals("child1", root.children.get(0).name);
+    assertEquals(Integer.valueOf(1), root.children.get(0).childCount);
+    assertEquals("child2", root.children.get(1).name);
+    assertEquals(Integer.valueOf(0), root.children.get(1).childCount);
+    assertTrue(root.children.get(0).children.isEmpty());
+  }
+
+  private String submitType(List<ProjectTree.ProjectData> roots) throws Exception {
+    StringWriter out = new StringWriter();
+    projectTree.writeTree(roots, ValueFilter.ALL, false, new JsonWriter(out));
+    return JsonParser.parseString(out.toString()).getAsJsonObject()
+        .getAsJsonObject("values").getAsJsonObject("default_submit_type").get("value").getAsString();
+  }
+
+  private static ProjectState.EffectiveMaxObjectSizeLimit maxObjectSizeLimit(long value) {
+    ProjectState.EffectiveMaxObjectSizeLimit limit = new ProjectState.EffectiveMaxObjectSizeLimit();
+    limit.value = value;
+    return limit;
+  }
+
+  private void mockQuery(String query, ProjectInfo... result) throws Exception {
+    QueryRequest request = mock(QueryRequest.class);
+    QueryRequest firstPage = mock(QueryRequest.class);
+    QueryRequest lastPage = mock(QueryRequest.class);
+    when(queryRequest.withQuery(query)).thenReturn(request);
+    when(request.withStart(0)).thenReturn(firstPage);
+    when(request.withStart(result.length)).thenReturn(lastPage);
+    when(firstPage.get()).thenReturn(List.of(result));
+    when(lastPage.get()).thenReturn(List.of());
+  }
+
+  private ProjectInfo projectInfo(String name, String parent) {
+    ProjectInfo info = new ProjectInfo();
+    info.name = name;
+    info.parent = parent;
+    return info;
+  }
+
   private Map<String, ProjectTree.Value> invokeProcessExtensionPanelSections(
       Map<String, ImmutableList<String>> currentSections,
       Map<String, ProjectTree.Value> parentPermissions) {
@@ -612,7 +1004,7 @@ public class ProjectTreeTest {
       java.lang.reflect.Method method = ProjectTree.class.getDeclaredMethod(
           "processExtensionPanelSections", Map.class, Map.class);
       method.setAccessible(true);
-      return (Map<String, ProjectTree.Value>) method.invoke(projectTree, currentSections, parentPermissions);
+      return fromTreeKeys((Map<TreeKey, ProjectTree.Value>) method.invoke(projectTree, currentSections, toTreeKeys(parentPermissions)));
     } catch (Exception e) {
       throw new RuntimeException("Failed to invoke processExtensionPanelSections", e);
     }
@@ -625,7 +1017,7 @@ public class ProjectTreeTest {
       java.lang.reflect.Method method = ProjectTree.class.getDeclaredMethod(
           "processPluginConfigs", Map.class, Map.class);
       method.setAccessible(true);
-      return (Map<String, ProjectTree.Value>) method.invoke(projectTree, currentConfigs, parentPermissions);
+      return fromTreeKeys((Map<TreeKey, ProjectTree.Value>) method.invoke(projectTree, currentConfigs, toTreeKeys(parentPermissions)));
     } catch (Exception e) {
       throw new RuntimeException("Failed to invoke processPluginConfigs", e);
     }
@@ -638,7 +1030,7 @@ public class ProjectTreeTest {
       java.lang.reflect.Method method = ProjectTree.class.getDeclaredMethod(
           "processLabelsSections", Map.class, Map.class);
       method.setAccessible(true);
-      return (Map<String, ProjectTree.Value>) method.invoke(projectTree, currentLabels, parentPermissions);
+      return fromTreeKeys((Map<TreeKey, ProjectTree.Value>) method.invoke(projectTree, currentLabels, toTreeKeys(parentPermissions)));
     } catch (Exception e) {
       throw new RuntimeException("Failed to invoke processLabelsSections", e);
     }
@@ -651,12 +1043,27 @@ public class ProjectTreeTest {
       java.lang.reflect.Method method = ProjectTree.class.getDeclaredMethod(
           "processAccessSections", Map.class, Map.class);
       method.setAccessible(true);
-      return (Map<String, ProjectTree.Value>) method.invoke(projectTree, currentSections, parentPermissions);
+      return fromTreeKeys((Map<TreeKey, ProjectTree.Value>) method.invoke(projectTree, currentSections, toTreeKeys(parentPermissions)));
     } catch (Exception e) {
       throw new RuntimeException("Failed to invoke processAccessSections", e);
     }
   }
 
+  private static Map<TreeKey, ProjectTree.Value> toTreeKeys(Map<String, ProjectTree.Value> values) {
+    if (values == null) {
+      return null;
+    }
+    Map<TreeKey, ProjectTree.Value> result = new HashMap<>();
+    values.forEach((key, value) -> result.put(TreeKey.parse(key), value));
+    return result;
+  }
+
+  private static Map<String, ProjectTree.Value> fromTreeKeys(Map<TreeKey, ProjectTree.Value> values) {
+    Map<String, ProjectTree.Value> result = new HashMap<>();
+    values.forEach((key, value) -> result.put(key.toString(), value));
+    return result;
+  }
+
   private String invokeFormatPermissionValue(PermissionRule rule, String permissionName) {
     try {
       java.lang.reflect.Method method = ProjectTree.class.getDeclaredMethod(
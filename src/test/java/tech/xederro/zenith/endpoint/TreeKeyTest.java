@@ -0,0 +1,67 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TreeKeyTest {
+  @Test
+  public void testParse_roundTripsEveryKind() {
+    for (String key : new String[] {
+        "parent",
+        "use_content_merge",
+        "refs/heads/* push Registered-Users",
+        "label Code-Review refs/heads/* label-range",
+        "plugin reviewers enable",
+        "plugin reviewers filter branch",
+        "extension_panel Panel With Spaces"}) {
+      assertEquals(key, TreeKey.parse(key).toString());
+    }
+  }
+
+  @Test
+  public void testParse_kinds() {
+    assertEquals(TreeKey.Kind.CONFIG, TreeKey.parse("state").kind());
+    assertEquals(TreeKey.Kind.ACCESS, TreeKey.parse("refs/* read Anonymous-Users").kind());
+    assertEquals(TreeKey.Kind.LABEL, TreeKey.parse("label Verified * label-function").kind());
+    assertEquals(TreeKey.Kind.PLUGIN, TreeKey.parse("plugin reviewers enable").kind());
+    assertEquals(TreeKey.Kind.EXTENSION_PANEL, TreeKey.parse("extension_panel Panel").kind());
+  }
+
+  @Test
+  public void testFactories_returnInternedKeys() {
+    TreeKey key = TreeKey.access("refs/heads/*", "push", "Registered-Users");
+
+    assertSame(key, TreeKey.parse("refs/heads/* push Registered-Users"));
+    assertSame(TreeKey.PARENT, TreeKey.config("parent"));
+    assertEquals("refs/heads/*", key.first());
+    assertEquals("push", key.second());
+    assertEquals("Registered-Users", key.third());
+  }
+
+  @Test
+  public void testIsInheritable() {
+    assertTrue(TreeKey.access("refs/*", "read", "Anonymous-Users").isInheritable());
+    assertTrue(TreeKey.label("Code-Review", "*", "label-range").isInheritable());
+    assertTrue(TreeKey.plugin("reviewers", "enable").isInheritable());
+    assertFalse(TreeKey.PARENT.isInheritable());
+    assertFalse(TreeKey.extensionPanel("Panel").isInheritable());
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import org.junit.Test;
+import tech.xederro.zenith.ZenithMetrics;
+import tech.xederro.zenith.ZenithMetrics.NodeResult;
+import tech.xederro.zenith.ZenithMetrics.TreePhase;
+
+public class TreeTraceTest {
+  @Test
+  public void testBreakdown_countsNodesAndListsRecordedSteps() throws Exception {
+    ZenithMetrics metrics = spy(new ZenithMetrics(new DisabledMetricMaker()));
+    TreeTrace trace = new TreeTrace(metrics, 0);
+
+    try (TreeTrace.Span ignored = trace.phase(TreePhase.FILL)) {
+      trace.node(NodeResult.COMPUTED);
+      trace.node(NodeResult.COMPUTED);
+      trace.node(NodeResult.CACHED);
+      trace.stage(TreeKey.Kind.ACCESS, System.nanoTime() - 5_000_000);
+    }
+
+    String breakdown = trace.breakdown();
+    assertTrue(breakdown, breakdown.startsWith("phases: fill "));
+    assertTrue(breakdown, breakdown.contains("nodes: computed 2, cached 1, failed 0"));
+    assertTrue(breakdown, breakdown.contains("project loads: access "));
+    assertFalse(breakdown, breakdown.contains("query"));
+    verify(metrics).startTree(TreePhase.FILL);
+    verify(metrics, times(2)).treeNode(NodeResult.COMPUTED);
+  }
+}
@@ -0,0 +1,73 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class ValueFilterTest {
+  @Test
+  public void testOf_emptySelectsEverything() {
+    ValueFilter filter = ValueFilter.of(List.of(), List.of());
+
+    assertSame(ValueFilter.ALL, filter);
+    assertTrue(filter.matches("refs/heads/* push Registered-Users"));
+    assertTrue(filter.mayMatchAccess());
+    assertTrue(filter.mayMatchPrefix(ValueFilter.PLUGIN_PREFIX));
+  }
+
+  @Test
+  public void testMatches_keysAndPrefixes() {
+    ValueFilter filter = ValueFilter.of(List.of("parent"), List.of("label Code-Review "));
+
+    assertTrue(filter.matches("parent"));
+    assertTrue(filter.matches("label Code-Review * label-range"));
+    assertFalse(filter.matches("label Verified * label-range"));
+    assertFalse(filter.matches("state"));
+  }
+
+  @Test
+  public void testMayMatchPrefix_singleLabel() {
+    ValueFilter filter = ValueFilter.of(List.of("label Code-Review * label-range"), List.of());
+
+    assertTrue(filter.mayMatchPrefix(ValueFilter.LABEL_PREFIX));
+    assertFalse(filter.mayMatchPrefix(ValueFilter.PLUGIN_PREFIX));
+    assertFalse(filter.mayMatchPrefix(ValueFilter.EXTENSION_PANEL_PREFIX));
+    assertFalse(filter.mayMatchAccess());
+  }
+
+  @Test
+  public void testMayMatchPrefix_shortPrefixCoversStage() {
+    ValueFilter filter = ValueFilter.of(List.of(), List.of("pl"));
+
+    assertTrue(filter.mayMatchPrefix(ValueFilter.PLUGIN_PREFIX));
+    assertFalse(filter.mayMatchPrefix(ValueFilter.LABEL_PREFIX));
+    assertTrue(filter.mayMatchAccess());
+  }
+
+  @Test
+  public void testMayMatchAccess_accessKey() {
+    ValueFilter filter = ValueFilter.of(List.of("refs/heads/* push Registered-Users"), List.of());
+
+    assertTrue(filter.mayMatchAccess());
+    assertFalse(filter.mayMatchPrefix(ValueFilter.LABEL_PREFIX));
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * @license
+ * Copyright (C) 2025 Dawid Jabłoński
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tech.xederro.zenith.endpoint;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ValueMapTest {
+  private static final TreeKey PUSH = TreeKey.access("refs/heads/*", "push", "Registered-Users");
+  private static final TreeKey READ = TreeKey.access("refs/*", "read", "Anonymous-Users");
+
+  @Test
+  public void testGet_inheritsParentValuesWithoutCopying() {
+    ValueMap parent = ValueMap.of(Map.of(
+        TreeKey.PARENT, new ProjectTree.Value(null, false),
+        PUSH, new ProjectTree.Value("ALLOW", false)));
+
+    ValueMap child = ValueMap.of(
+        parent, Map.of(TreeKey.PARENT, new ProjectTree.Value("parent", false)), TreeKey::isInheritable);
+
+    assertEquals(1, child.own().size());
+    assertEquals(new ProjectTree.Value("ALLOW", true), child.get(PUSH));
+    assertEquals(new ProjectTree.Value("parent", false), child.get(TreeKey.PARENT));
+    assertEquals(2, child.size());
+    assertEquals(Map.of(
+        TreeKey.PARENT, new ProjectTree.Value("parent", false),
+        PUSH, new ProjectTree.Value("ALLOW", true)), new HashMap<>(child));
+  }
+
+  @Test
+  public void testGet_ownValuesOverrideAndPredicateBlocks() {
+    ValueMap parent = ValueMap.of(Map.of(
+        PUSH, new ProjectTree.Value("ALLOW", false),
+        READ, new ProjectTree.Value("ALLOW", false)));
+
+    ValueMap child = ValueMap.of(
+        parent, Map.of(READ, new ProjectTree.Value("DENY", false)), key -> !key.equals(PUSH));
+
+    assertNull(child.get(PUSH));
+    assertFalse(child.containsKey(PUSH));
+    assertEquals(new ProjectTree.Value("DENY", false), child.get(READ));
+    assertEquals(1, child.size());
+  }
+
+  @Test
+  public void testWeight_countsRetainedParentLayers() {
+    ValueMap parent = ValueMap.of(Map.of(
+        PUSH, new ProjectTree.Value("ALLOW", false),
+        READ, new ProjectTree.Value("ALLOW", false)));
+    ValueMap child = ValueMap.of(
+        parent, Map.of(TreeKey.PARENT, new ProjectTree.Value("parent", false)), TreeKey::isInheritable);
+    ValueMap grandChild = ValueMap.of(child, Map.of(), TreeKey::isInheritable);
+
+    assertEquals(2, parent.weight());
+    assertEquals(3, child.weight());
+    assertEquals(3, grandChild.weight());
+    assertEquals(1 + 3, new ProjectTreeCache.ValuesWeigher().weigh(null, grandChild));
+  }
+
+  @Test
+  public void testOf_collapsesDeepChains() {
+    ValueMap values = ValueMap.of(Map.of(PUSH, new ProjectTree.Value("ALLOW", false)));
+    for (int i = 0; i <= ValueMap.MAX_DEPTH; i++) {
+      values = ValueMap.of(values, Map.of(), TreeKey::isInheritable);
+    }
+
+    // the last layer holds every value itself and no longer refers to its ancestors
+    assertEquals(1, values.own().size());
+    assertEquals(new ProjectTree.Value("ALLOW", true), values.get(PUSH));
+    assertEquals(new ProjectTree.Value("ALLOW", true), values.own().get(PUSH));
+  }
+}